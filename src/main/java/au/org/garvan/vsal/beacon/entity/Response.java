@@ -37,6 +37,7 @@ public class Response {
     private List<Allele> alleles;
     private String info;
     private Error error;
+    private List<DatasetAlleleResponse> datasetAlleleResponses; // federated queries only
 
     /*
      * required field(s): exists
@@ -93,4 +94,12 @@ public class Response {
     public void setError(Error error) {
         this.error = error;
     }
+
+    public List<DatasetAlleleResponse> getDatasetAlleleResponses() {
+        return datasetAlleleResponses;
+    }
+
+    public void setDatasetAlleleResponses(List<DatasetAlleleResponse> datasetAlleleResponses) {
+        this.datasetAlleleResponses = datasetAlleleResponses;
+    }
 }
@@ -23,15 +23,22 @@
  */
 package au.org.garvan.vsal.beacon.rest;
 
+import au.org.garvan.vsal.beacon.entity.BeaconBatchJaxBean;
+import au.org.garvan.vsal.beacon.entity.BeaconBatchResponse;
 import au.org.garvan.vsal.beacon.entity.BeaconResponse;
 import au.org.garvan.vsal.beacon.service.BeaconService;
 
 import javax.inject.Inject;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Beacon rest resource.
@@ -46,12 +53,31 @@ public class BeaconResource {
     @Inject
     private BeaconService service;
 
+    /*
+     * Request thread is released while SSVS backends are being called.
+     * datasets (csv or "all") selects a federated query, otherwise a single dataset is queried.
+     */
     @GET
-    public BeaconResponse query(@QueryParam("chrom") String chrom,
-                                @QueryParam("pos") Integer pos,
-                                @QueryParam("allele") String allele,
-                                @QueryParam("ref") String ref,
-                                @QueryParam("dataset") String dataset) {
-        return service.query(chrom, pos, allele, ref, dataset);
+    public void query(@QueryParam("chrom") String chrom,
+                      @QueryParam("pos") Integer pos,
+                      @QueryParam("allele") String allele,
+                      @QueryParam("ref") String ref,
+                      @QueryParam("dataset") String dataset,
+                      @QueryParam("datasets") String datasets,
+                      @Suspended final AsyncResponse asyncResponse) {
+        CompletionStage<BeaconResponse> response = (datasets != null && !datasets.isEmpty()) ?
+                service.queryDatasetsAsync(chrom, pos, allele, ref, datasets) :
+                service.queryAsync(chrom, pos, allele, ref, dataset);
+        response.whenComplete((res, e) -> asyncResponse.resume((e == null) ? res : e));
    }
+
+    /**
+     * Batch of queries in one request, answered in order of queries.
+     */
+    @POST
+    @Path("/batch")
+    @Consumes({MediaType.APPLICATION_JSON})
+    public BeaconBatchResponse queryBatch(BeaconBatchJaxBean batch) {
+        return service.queryBatch((batch == null) ? null : batch.queries);
+    }
 }
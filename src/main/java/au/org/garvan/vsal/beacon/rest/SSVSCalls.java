@@ -26,24 +26,46 @@
 package au.org.garvan.vsal.beacon.rest;
 
 import au.org.garvan.vsal.beacon.entity.BeaconResponseSSVS;
+import au.org.garvan.vsal.beacon.entity.Chromosome;
 import au.org.garvan.vsal.beacon.entity.Query;
 import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.util.ReadConfig;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
 
 import javax.ws.rs.core.MultivaluedMap;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Calls to SSVS backends.
+ * <p>
+ * One Jersey client is shared by all calls. It is thread safe and its connections are kept
+ * alive by HttpURLConnection between calls to the same backend. Calls have connect/read
+ * timeouts and run on a bounded pool of ssvsThreads. Each backend takes at most
+ * ssvsMaxConnectionsPerBackend calls at a time, the rest wait in a queue of the backend,
+ * not on pool threads, so a slow backend doesn't hold up calls to the others.
+ */
 public class SSVSCalls {
 
-    private static Map<DatasetID, String> beaconURLs =
+    private static final Map<DatasetID, String> beaconURLs =
         new HashMap<DatasetID, String>() {{
             put(DatasetID.MITO, "http://localhost:7081/ssvs2/core/search");
             put(DatasetID.MGRB, "http://localhost:7082/ssvs2/core/search");
@@ -63,59 +85,158 @@ public class SSVSCalls {
             put(DatasetID.KIDGEN, "http://localhost:7091/ssvs2/core/search");
             put(DatasetID.ASPREE, "http://localhost:7084/ssvs2/core/search");
         }};
-    private static Properties prop = null;
-    private static String propFileName = "vsal.properties";
+    private static final Client client;
+    private static final ExecutorService executor;
+    private static final ScheduledExecutorService deadlines;
+    private static final Map<String, Backend> backends = new ConcurrentHashMap<>(); // by backend URL
+    private static final int maxConnectionsPerBackend;
 
-    private static ClientResponse restGetCall(String url, MultivaluedMap<String,String> params)
-            throws IOException {
-//        try {
-            Client client = Client.create();
-            WebResource webResource = client.resource(url);
-            return webResource.queryParams(params).accept("application/json").get(ClientResponse.class);
-//        } catch (Exception e) {
-//            throw new IOException("REST call exception");
-//        }
+    static {
+        Properties prop = ReadConfig.getProp();
+        for (DatasetID id : DatasetID.values()) {
+            String url = prop.getProperty("beacon.url." + id.name().toLowerCase());
+            if (url != null)
+                beaconURLs.put(id, url);
+        }
+        maxConnectionsPerBackend = Integer.parseInt(prop.getProperty("ssvsMaxConnectionsPerBackend", "8"));
+        client = Client.create();
+        client.setConnectTimeout(Integer.parseInt(prop.getProperty("ssvsConnectTimeoutMs", "2000")));
+        client.setReadTimeout(Integer.parseInt(prop.getProperty("ssvsReadTimeoutMs", "10000")));
+        final AtomicInteger n = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Integer.parseInt(prop.getProperty("ssvsThreads", "32")), r -> {
+            Thread t = new Thread(r, "ssvs-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ssvs-deadline");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
-    private static synchronized void readConfig()
-            throws IOException {
-        if (prop == null) {
-            try (InputStream inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(propFileName)) {
-                Properties p = new Properties();
-                if (inputStream != null) {
-                    p.load(inputStream);
-                } else {
-                    throw new FileNotFoundException("property file '" + propFileName + "' not found.");
+    /*
+     * Calls of a backend. At most maxConnectionsPerBackend of them are handed to the pool at a time, each
+     * holds its slot until the entity has been read and the response closed, i.e. until the connection
+     * is back in the pool.
+     */
+    private static final class Backend {
+        private final Queue<Call<?>> waiting = new ArrayDeque<>();
+        private int running;
+
+        synchronized void submit(Call<?> c) {
+            waiting.add(c);
+            dispatch();
+        }
+
+        synchronized void done() {
+            --running;
+            dispatch();
+        }
+
+        synchronized boolean remove(Call<?> c) {
+            return waiting.remove(c);
+        }
+
+        private void dispatch() {
+            while (running < maxConnectionsPerBackend && !waiting.isEmpty()) {
+                ++running;
+                executor.execute(waiting.poll());
+            }
+        }
+    }
+
+    /*
+     * A call of a backend, completes res. Completing res from outside (deadline, cancellation) cancels
+     * the call: a waiting call is dropped, a running one is interrupted. The deadline, if any, starts
+     * when the call starts running, time spent in queues doesn't count.
+     */
+    private static final class Call<T> implements Runnable {
+        private final Backend backend;
+        private final String url;
+        private final MultivaluedMap<String,String> params;
+        private final Class<T> entity;
+        private final long deadlineMs; // 0 - none
+        private final CompletableFuture<T> res = new CompletableFuture<>();
+        private Thread runner; // guarded by this
+
+        private Call(Backend backend, String url, MultivaluedMap<String,String> params, Class<T> entity, long deadlineMs) {
+            this.backend = backend;
+            this.url = url;
+            this.params = params;
+            this.entity = entity;
+            this.deadlineMs = deadlineMs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (res.isDone()) return; // cancelled before it has started
+                    runner = Thread.currentThread();
                 }
-                prop = p;
-                if (prop.getProperty("beacon.url.mgrb") != null)
-                    beaconURLs.put(DatasetID.MGRB, prop.getProperty("beacon.url.mgrb"));
-                if (prop.getProperty("beacon.url.mito") != null)
-                    beaconURLs.put(DatasetID.MITO, prop.getProperty("beacon.url.mito"));
-                if (prop.getProperty("beacon.url.ac") != null)
-                    beaconURLs.put(DatasetID.AC, prop.getProperty("beacon.url.ac"));
-                if (prop.getProperty("beacon.url.acpro") != null)
-                    beaconURLs.put(DatasetID.ACPRO, prop.getProperty("beacon.url.acpro"));
-                if (prop.getProperty("beacon.url.demo") != null)
-                    beaconURLs.put(DatasetID.DEMO, prop.getProperty("beacon.url.demo"));
-                if (prop.getProperty("beacon.url.bm") != null)
-                    beaconURLs.put(DatasetID.BM, prop.getProperty("beacon.url.bm"));
-                if (prop.getProperty("beacon.url.ee") != null)
-                    beaconURLs.put(DatasetID.EE, prop.getProperty("beacon.url.ee"));
-                if (prop.getProperty("beacon.url.ld") != null)
-                    beaconURLs.put(DatasetID.LD, prop.getProperty("beacon.url.ld"));
-                if (prop.getProperty("beacon.url.circa") != null)
-                    beaconURLs.put(DatasetID.CIRCA, prop.getProperty("beacon.url.circa"));
-                if (prop.getProperty("beacon.url.iccon") != null)
-                    beaconURLs.put(DatasetID.ICCON, prop.getProperty("beacon.url.iccon"));
-                if (prop.getProperty("beacon.url.kidgen") != null)
-                    beaconURLs.put(DatasetID.KIDGEN, prop.getProperty("beacon.url.kidgen"));
+                ScheduledFuture<?> timer = (deadlineMs > 0) ? deadlines.schedule(() ->
+                        res.completeExceptionally(new TimeoutException("No answer in " + deadlineMs + " ms")),
+                        deadlineMs, TimeUnit.MILLISECONDS) : null;
+                try {
+                    res.complete(restGetCall(url, params, entity));
+                } catch (IOException | RuntimeException e) {
+                    res.completeExceptionally(e);
+                } finally {
+                    if (timer != null) timer.cancel(false);
+                }
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                Thread.interrupted(); // pool threads don't keep interrupts of cancelled calls
+                backend.done();
+            }
+        }
+
+        void cancel() {
+            if (backend.remove(this)) return;
+            synchronized (this) {
+                if (runner != null && runner != Thread.currentThread()) runner.interrupt();
             }
         }
     }
 
-    public static BeaconResponseSSVS beacon(Query q) throws IOException {
-        if (prop == null) readConfig();
+    private static <T> T restGetCall(String url, MultivaluedMap<String,String> params, Class<T> entity)
+            throws IOException {
+        WebResource webResource = client.resource(url);
+        ClientResponse queryResult = webResource.queryParams(params).accept("application/json").get(ClientResponse.class);
+        try {
+            if (queryResult.getStatus() != 200) {
+                throw new IOException("REST status: " + queryResult.getStatus());
+            }
+
+            // JAXB Unmarshalling - works fine here
+            return queryResult.getEntity(entity);
+        } finally {
+            queryResult.close(); // returns connection for keep-alive
+        }
+    }
+
+    /*
+     * Queues a call of a backend, completes on a SSVS thread. deadlineMs == 0 means no deadline.
+     */
+    private static <T> CompletableFuture<T> restGetCallAsync(String url, MultivaluedMap<String,String> params,
+                                                             Class<T> entity, long deadlineMs) {
+        Backend backend = backends.computeIfAbsent(url, u -> new Backend());
+        final Call<T> call = new Call<>(backend, url, params, entity, deadlineMs);
+        call.res.whenComplete((r, e) -> {
+            if (e != null) call.cancel();
+        });
+        backend.submit(call);
+        return call.res;
+    }
+
+    public static String getURL(DatasetID dataset) {
+        return beaconURLs.get(dataset);
+    }
+
+    private static MultivaluedMap<String,String> beaconParams(Query q) {
         MultivaluedMap<String,String> queryParams = new MultivaluedMapImpl();
 
         if (q.getChromosome() != null)
@@ -128,14 +249,61 @@ public class SSVSCalls {
             queryParams.add("alt", q.getAllele());
         queryParams.add("beacon", "true");
         queryParams.add("dataset", q.getDatasetId());
+        return queryParams;
+    }
 
-        ClientResponse queryResult = restGetCall(beaconURLs.get(DatasetID.fromString(q.getDatasetId())), queryParams);
+    public static BeaconResponseSSVS beacon(Query q) throws IOException {
+        String url = getURL(DatasetID.fromString(q.getDatasetId()));
+        if (url == null)
+            throw new IOException("No SSVS backend for " + q.getDatasetId());
+        return restGetCall(url, beaconParams(q), BeaconResponseSSVS.class);
+    }
 
-        if (queryResult.getStatus() != 200) {
-            throw new IOException("REST status: " + queryResult.getStatus());
-        }
+    /**
+     * Non-blocking beacon call, completes on a SSVS thread. Completing the future exceptionally
+     * cancels the call.
+     */
+    public static CompletableFuture<BeaconResponseSSVS> beaconAsync(final Query q) {
+        return beaconAsync(q, 0);
+    }
+
+    /**
+     * Non-blocking beacon call, completed with TimeoutException and cancelled if the backend hasn't
+     * answered in deadlineMs since the call has started, 0 means no deadline.
+     */
+    public static CompletableFuture<BeaconResponseSSVS> beaconAsync(final Query q, long deadlineMs) {
+        String url = getURL(DatasetID.fromString(q.getDatasetId()));
+        if (url == null) return noBackend(q.getDatasetId());
+        return restGetCallAsync(url, beaconParams(q), BeaconResponseSSVS.class, deadlineMs);
+    }
+
+    /**
+     * Non-blocking call for all variants of a region [start, end] (1-based) of a dataset, deadline as
+     * for {@link #beaconAsync(Query, long)}. The response has fewer variants than its total if the
+     * backend has truncated the list.
+     */
+    public static CompletableFuture<BeaconResponseSSVS> regionAsync(DatasetID dataset, Chromosome chr, int start, int end,
+                                                                    long deadlineMs) {
+        String url = getURL(dataset);
+        if (url == null) return noBackend(dataset.toString());
+        MultivaluedMap<String,String> queryParams = new MultivaluedMapImpl();
+        queryParams.add("chr", chr.toString());
+        queryParams.add("start", Integer.toString(start));
+        queryParams.add("end", Integer.toString(end));
+        queryParams.add("dataset", dataset.toString());
+        return restGetCallAsync(url, queryParams, BeaconResponseSSVS.class, deadlineMs);
+    }
+
+    private static CompletableFuture<BeaconResponseSSVS> noBackend(String dataset) {
+        CompletableFuture<BeaconResponseSSVS> res = new CompletableFuture<>();
+        res.completeExceptionally(new IOException("No SSVS backend for " + dataset));
+        return res;
+    }
 
-        // JAXB Unmarshalling - works fine here
-        return queryResult.getEntity(BeaconResponseSSVS.class);
+    /**
+     * @return datasets with a SSVS backend
+     */
+    public static List<DatasetID> getDatasets() {
+        return new ArrayList<>(beaconURLs.keySet());
     }
-}
\ No newline at end of file
+}
@@ -27,15 +27,36 @@ package au.org.garvan.vsal.beacon.service;
 
 import au.org.garvan.vsal.beacon.entity.*;
 import au.org.garvan.vsal.beacon.rest.SSVSCalls;
+import au.org.garvan.vsal.beacon.util.BeaconFilters;
 import au.org.garvan.vsal.beacon.util.QueryUtils;
+import au.org.garvan.vsal.core.entity.CoreVariant;
 import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.service.VariantStore;
+import au.org.garvan.vsal.core.util.ReadConfig;
 import com.sun.org.apache.xpath.internal.operations.Bool;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 
 /**
@@ -47,11 +68,22 @@ import java.util.List;
 @RequestScoped
 public class BeaconSSVS implements BeaconService {
 
+    private static final Pattern BASES = Pattern.compile("[ACGT]+");
+
     private Dataset dataset;
     private List<Dataset> datasets;
     private Query query;
     private List<Query> queries;
     private Beacon beacon;
+    private long deadlineMs; // per backend, federated queries
+    private int batchMaxQueries;
+    private int batchMaxRegions; // per scan of a batch
+    private int batchWindowBp;
+    private int batchMaxInFlight; // SSVS calls of a batch
+    private long batchDeadlineMs;
+
+    @Inject
+    private VariantStore store;
 
     @PostConstruct
     public void init() {
@@ -63,11 +95,25 @@ public class BeaconSSVS implements BeaconService {
         this.datasets.add(dataset);
         this.beacon = new Beacon("Garvan Beacon ID", "Garvan Beacon", "Garvan Institute of Medical Research", "Garvan Beacon", "0.2",
                 "https://sgc.garvan.org.au/vsal/beacon", "sgc@garvan.org.au", "", datasets, queries);
+        Properties p = ReadConfig.getProp();
+        this.deadlineMs = Long.parseLong(p.getProperty("beaconDeadlineMs", "5000"));
+        this.batchMaxQueries = Integer.parseInt(p.getProperty("beaconBatchMaxQueries", "1000"));
+        this.batchMaxRegions = Integer.parseInt(p.getProperty("beaconBatchMaxRegions", "500"));
+        this.batchWindowBp = Integer.parseInt(p.getProperty("beaconBatchWindowBp", "50000"));
+        this.batchMaxInFlight = Math.max(1, Integer.parseInt(p.getProperty("beaconBatchMaxInFlight", "4")));
+        this.batchDeadlineMs = Long.parseLong(p.getProperty("beaconBatchDeadlineMs", "30000"));
     }
 
     @Override
     public BeaconResponse query(String chrom, Integer pos, String allele, String ref, String dataset) {
+        return queryAsync(chrom, pos, allele, ref, dataset).toCompletableFuture().join();
+    }
 
+    /*
+     * Returns response with an error for incomplete or incorrect query, null for a valid one.
+     * Dataset is checked by callers.
+     */
+    private BeaconResponse validate(String chrom, Integer pos, String allele, String ref, String dataset, Query q) {
         // required parameters are missing
         if (chrom == null || pos == null || allele == null || ref == null) {
             au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incomplete Query", "Required parameters are missing.");
@@ -75,8 +121,6 @@ public class BeaconSSVS implements BeaconService {
             return new BeaconResponse(beacon.getId(), QueryUtils.getQuery(chrom, pos, allele, ref, dataset), responseResource);
         }
 
-        Query q = QueryUtils.getQuery(chrom, pos, allele, ref, dataset == null ? "MGRB" : dataset);
-
         // required parameters are incorrect
         if (q.getReference() == null || q.getReference() != Reference.HG19) {
             au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Reference: \'" + ref + "\' is incorrect. Accepted Reference: HG19");
@@ -94,35 +138,369 @@ public class BeaconSSVS implements BeaconService {
             au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Allele: \'" + allele + "\' is incorrect.");
             Response responseResource = new Response(null, null, null, null, errorResource);
             return new BeaconResponse(beacon.getId(), QueryUtils.getQuery(chrom, pos, allele, ref, dataset), responseResource);
-        } else if (DatasetID.fromString(q.getDatasetId()) == null) {
+        }
+        return null;
+    }
+
+    /*
+     * Answer of a SSVS backend for a dataset, res is null if the call has failed with e.
+     */
+    private static DatasetAlleleResponse toDatasetResponse(String datasetId, String allele, BeaconResponseSSVS res, Throwable e) {
+        if (e == null && res == null)
+            e = new RuntimeException("Response is null");
+        if (e != null) {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            String name = (cause instanceof TimeoutException) ? "Timeout" : "VS Runtime exception";
+            au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error(name, cause.getMessage());
+            return new DatasetAlleleResponse(datasetId, null, null, null, errorResource);
+        }
+        return toDatasetResponse(datasetId, allele,
+                (res.getVariants() != null && !res.getVariants().isEmpty()) ? res.getVariants().get(0) : null);
+    }
+
+    /*
+     * Answer for a variant of a dataset, v is null if there is no such variant.
+     */
+    private static DatasetAlleleResponse toDatasetResponse(String datasetId, String allele, Variant v) {
+        List<Allele> alleles = new LinkedList<>();
+        Boolean exists = false;
+        Integer observed = 0;
+        if (v != null) {
+            alleles.add(new Allele(allele, v.getAf()));
+            exists = v.getAf() > 0;
+            observed = v.getAc();
+        }
+        return new DatasetAlleleResponse(datasetId, exists, observed, alleles, null);
+    }
+
+    private static Response toResponse(DatasetAlleleResponse dr) {
+        return (dr.getError() != null) ?
+                new Response(null, null, null, null, dr.getError()) :
+                new Response(dr.getExists(), dr.getObserved(), dr.getAlleles(), "Beacon coordinates are 0-based!", null);
+    }
+
+    /*
+     * Calls SSVS backend of a dataset, or answers locally if the dataset's filter rules the variant out.
+     * q has 1-based position, deadlineMs == 0 means no deadline.
+     */
+    private static CompletableFuture<BeaconResponseSSVS> call(Query q, DatasetID id, long deadlineMs) {
+        if (!BeaconFilters.mightContain(id, q.getChromosome().toString(), q.getPosition(), q.getAllele()))
+            return CompletableFuture.completedFuture(new BeaconResponseSSVS()); // no variants
+        return (deadlineMs > 0) ? SSVSCalls.beaconAsync(q, deadlineMs) : SSVSCalls.beaconAsync(q);
+    }
+
+    @Override
+    public CompletionStage<BeaconResponse> queryAsync(String chrom, Integer pos, String allele, String ref, String dataset) {
+        Query q = QueryUtils.getQuery(chrom, pos, allele, ref, dataset == null ? "MGRB" : dataset);
+
+        BeaconResponse invalid = validate(chrom, pos, allele, ref, dataset, q);
+        if (invalid != null) return CompletableFuture.completedFuture(invalid);
+
+        final DatasetID id = DatasetID.fromString(q.getDatasetId());
+        if (id == null) {
             au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Dataset: \'" + dataset + "\' is unknown.");
             Response responseResource = new Response(null, null, null, null, errorResource);
-            return new BeaconResponse(beacon.getId(), QueryUtils.getQuery(chrom, pos, allele, ref, dataset), responseResource);
+            return CompletableFuture.completedFuture(new BeaconResponse(beacon.getId(), QueryUtils.getQuery(chrom, pos, allele, ref, dataset), responseResource));
         }
 
-        try {
-            q.setPosition(q.getPosition()+1);  // convert 0-based beacon protocol into 1-based VCF position
-            BeaconResponseSSVS res = SSVSCalls.beacon(q);
-            if (res == null)
-                throw new RuntimeException("Response is null");
+        final String beaconId = beacon.getId(); // callbacks run outside of the request
+        q.setDatasetId(id.toString());
+        q.setPosition(q.getPosition()+1);  // convert 0-based beacon protocol into 1-based VCF position
+        return call(q, id, 0).handle((res, e) -> {
             q.setPosition(q.getPosition()-1);
-            q.setDatasetId("MGRB"); // fixme: currently only MGRB is in prod
+            return new BeaconResponse(beaconId, q, toResponse(toDatasetResponse(q.getDatasetId(), q.getAllele(), res, e)));
+        });
+    }
+
+    @Override
+    public CompletionStage<BeaconResponse> queryDatasetsAsync(String chrom, Integer pos, String allele, String ref, String datasets) {
+        Query q = QueryUtils.getQuery(chrom, pos, allele, ref, datasets);
+
+        BeaconResponse invalid = validate(chrom, pos, allele, ref, datasets, q);
+        if (invalid != null) return CompletableFuture.completedFuture(invalid);
+
+        List<DatasetID> ids = new ArrayList<>();
+        if (datasets.trim().equalsIgnoreCase("all")) {
+            ids.addAll(SSVSCalls.getDatasets());
+        } else {
+            for (String d : datasets.split("\\s*,\\s*")) {
+                DatasetID id = DatasetID.fromString(d);
+                if (id == null || SSVSCalls.getURL(id) == null) {
+                    au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Dataset: \'" + d + "\' is unknown.");
+                    Response responseResource = new Response(null, null, null, null, errorResource);
+                    return CompletableFuture.completedFuture(new BeaconResponse(beacon.getId(), q, responseResource));
+                }
+                if (!ids.contains(id)) ids.add(id);
+            }
+        }
+
+        // fan out, each call has its own deadline, counted from when the call starts running
+        final String beaconId = beacon.getId(); // callbacks run outside of the request
+        final List<CompletableFuture<DatasetAlleleResponse>> answers = new ArrayList<>(ids.size());
+        for (DatasetID id : ids) {
+            final Query dq = new Query(q.getAllele(), q.getChromosome(), q.getPosition()+1, q.getReference(), id.toString()); // 1-based
+            answers.add(call(dq, id, deadlineMs)
+                    .handle((res, e) -> toDatasetResponse(dq.getDatasetId(), dq.getAllele(), res, e)));
+        }
+
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).thenApply(none -> {
+            List<DatasetAlleleResponse> drs = new ArrayList<>(answers.size());
+            Boolean exists = null;
+            Integer observed = null;
+            for (CompletableFuture<DatasetAlleleResponse> a : answers) {
+                DatasetAlleleResponse dr = a.join();
+                drs.add(dr);
+                if (dr.getError() != null) continue;
+                exists = (exists != null && exists) || dr.getExists();
+                observed = ((observed == null) ? 0 : observed) + ((dr.getObserved() == null) ? 0 : dr.getObserved());
+            }
+            int answered = 0;
+            for (DatasetAlleleResponse dr : drs) if (dr.getError() == null) ++answered;
+            au.org.garvan.vsal.beacon.entity.Error errorResource = (answered == 0) ?
+                    new au.org.garvan.vsal.beacon.entity.Error("VS Runtime exception", "No dataset has answered") : null;
+            Response responseResource = new Response(exists, observed, null,
+                    "Beacon coordinates are 0-based! " + answered + " of " + drs.size() + " datasets have answered.", errorResource);
+            responseResource.setDatasetAlleleResponses(drs);
+            return new BeaconResponse(beaconId, q, responseResource);
+        });
+    }
+
+    @Override
+    public BeaconBatchResponse queryBatch(List<BeaconBatchJaxBean.Item> items) {
+        if (items == null || items.isEmpty()) {
+            au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incomplete Query", "No queries.");
+            return new BeaconBatchResponse(null, errorResource);
+        }
+        if (items.size() > batchMaxQueries) {
+            au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "At most " + batchMaxQueries + " queries in a batch.");
+            return new BeaconBatchResponse(null, errorResource);
+        }
+
+        BeaconResponse[] responses = new BeaconResponse[items.size()];
+        Query[] queries = new Query[items.size()];
+        Map<DatasetID, List<Integer>> byDataset = new EnumMap<>(DatasetID.class); // indexes of queries to look up
+
+        for (int i = 0; i < items.size(); ++i) {
+            BeaconBatchJaxBean.Item it = items.get(i);
+            String dataset = (it.dataset == null) ? "MGRB" : it.dataset;
+            Query q = QueryUtils.getQuery(it.chrom, it.pos, it.allele, it.ref, dataset);
+            responses[i] = validate(it.chrom, it.pos, it.allele, it.ref, dataset, q);
+            if (responses[i] != null) continue;
+            DatasetID id = DatasetID.fromString(dataset);
+            if (id == null) {
+                au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Dataset: \'" + dataset + "\' is unknown.");
+                responses[i] = new BeaconResponse(beacon.getId(), q, new Response(null, null, null, null, errorResource));
+                continue;
+            }
+            q.setDatasetId(id.toString());
+            queries[i] = q;
+            if (!BASES.matcher(q.getAllele()).matches()) {
+                au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Allele: \'" + it.allele + "\' isn't supported in batch queries.");
+                responses[i] = new BeaconResponse(beacon.getId(), q, new Response(null, null, null, null, errorResource));
+            } else if (!BeaconFilters.mightContain(id, q.getChromosome().toString(), q.getPosition() + 1, q.getAllele())) {
+                responses[i] = new BeaconResponse(beacon.getId(), q, new Response(false, 0, new LinkedList<Allele>(), "Beacon coordinates are 0-based!", null));
+            } else {
+                List<Integer> l = byDataset.get(id);
+                if (l == null) byDataset.put(id, l = new ArrayList<>());
+                l.add(i);
+            }
+        }
+
+        // each dataset is answered by the backend of its single queries: SSVS if it has one, the local store otherwise
+        final String beaconId = beacon.getId(); // callbacks run outside of the request
+        final List<BatchCall> windowCalls = new ArrayList<>();
+        final List<Integer> truncated = Collections.synchronizedList(new ArrayList<Integer>()); // queries of truncated windows
+        for (Map.Entry<DatasetID, List<Integer>> e : byDataset.entrySet()) {
+            final DatasetID id = e.getKey();
+            if (SSVSCalls.getURL(id) != null) {
+                for (final Window w : windows(e.getValue(), queries)) {
+                    windowCalls.add(new BatchCall(() -> SSVSCalls.regionAsync(id, w.chr, w.start, w.end, deadlineMs), (res, ex) -> {
+                        if (ex == null && res != null && res.getVariants() != null && res.getTotal() != null
+                                && res.getTotal() > res.getVariants().size()) {
+                            truncated.addAll(w.queries);
+                            return;
+                        }
+                        Map<String, Variant> found = new HashMap<>();
+                        if (ex == null && res != null && res.getVariants() != null)
+                            for (Variant v : res.getVariants())
+                                found.put(v.getStart() + ":" + v.getAlt(), v);
+                        for (int i : w.queries) {
+                            Query q = queries[i];
+                            DatasetAlleleResponse dr = (ex != null || res == null) ?
+                                    toDatasetResponse(q.getDatasetId(), q.getAllele(), null, ex) :
+                                    toDatasetResponse(q.getDatasetId(), q.getAllele(), found.get((q.getPosition() + 1) + ":" + q.getAllele()));
+                            responses[i] = new BeaconResponse(beaconId, q, toResponse(dr));
+                        }
+                    }));
+                }
+                continue;
+            }
+            try {
+                if (!store.hasVariants(id, Reference.HG19)) {
+                    for (int i : e.getValue()) {
+                        au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("Incorrect Query", "Dataset: \'" + id + "\' isn't available.");
+                        responses[i] = new BeaconResponse(beaconId, queries[i], new Response(null, null, null, null, errorResource));
+                    }
+                    continue;
+                }
+                lookUp(id, e.getValue(), queries, responses);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                for (int i : e.getValue()) {
+                    au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("VS Runtime exception", ex.getMessage());
+                    responses[i] = new BeaconResponse(beaconId, queries[i], new Response(null, null, null, null, errorResource));
+                }
+            }
+        }
+
+        // SSVS windows, then single calls for queries of windows with more variants than a backend returns
+        long until = System.currentTimeMillis() + batchDeadlineMs;
+        runBounded(windowCalls, until);
+        List<BatchCall> singleCalls = new ArrayList<>();
+        for (final int i : truncated) {
+            final Query q = queries[i];
+            final Query dq = new Query(q.getAllele(), q.getChromosome(), q.getPosition()+1, q.getReference(), q.getDatasetId()); // 1-based
+            singleCalls.add(new BatchCall(() -> SSVSCalls.beaconAsync(dq, deadlineMs), (res, ex) ->
+                    responses[i] = new BeaconResponse(beaconId, q, toResponse(toDatasetResponse(q.getDatasetId(), q.getAllele(), res, ex)))));
+        }
+        runBounded(singleCalls, until);
+
+        return new BeaconBatchResponse(Arrays.asList(responses), null);
+    }
+
+    /*
+     * Region of a chromosome (1-based, inclusive) covering positions of some batch queries.
+     */
+    private static final class Window {
+        private final Chromosome chr;
+        private final int start;
+        private int end;
+        private final List<Integer> queries = new ArrayList<>(); // indexes
+
+        private Window(Chromosome chr, int start) {
+            this.chr = chr;
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    /*
+     * Queries of a dataset grouped into windows: queries of a chromosome are sorted by position and
+     * positions closer than batchWindowBp to the start of a window share the window.
+     */
+    private List<Window> windows(List<Integer> idx, Query[] queries) {
+        Collections.sort(idx, (a, b) -> {
+            int cmp = queries[a].getChromosome().compareTo(queries[b].getChromosome());
+            return (cmp != 0) ? cmp : Integer.compare(queries[a].getPosition(), queries[b].getPosition());
+        });
+
+        List<Window> windows = new ArrayList<>();
+        Window w = null;
+        for (int i : idx) {
+            Chromosome c = queries[i].getChromosome();
+            int pos = queries[i].getPosition() + 1; // 1-based
+            if (w != null && w.chr == c && pos - w.start <= batchWindowBp) {
+                w.end = pos;
+            } else {
+                w = new Window(c, pos);
+                windows.add(w);
+            }
+            w.queries.add(i);
+        }
+        return windows;
+    }
+
+    /*
+     * A SSVS call of a batch, and what is done with its answer or failure.
+     */
+    private static final class BatchCall {
+        private final Supplier<CompletableFuture<BeaconResponseSSVS>> call;
+        private final BiConsumer<BeaconResponseSSVS, Throwable> answer;
+
+        private BatchCall(Supplier<CompletableFuture<BeaconResponseSSVS>> call, BiConsumer<BeaconResponseSSVS, Throwable> answer) {
+            this.call = call;
+            this.answer = answer;
+        }
+    }
+
+    /*
+     * Makes calls of a batch with at most batchMaxInFlight of them at a time, until all are answered or
+     * the batch deadline passes. Calls not made by then are answered with TimeoutException, calls still
+     * running or queued are cancelled.
+     */
+    private void runBounded(List<BatchCall> calls, long until) {
+        final Semaphore inFlight = new Semaphore(batchMaxInFlight);
+        List<CompletableFuture<BeaconResponseSSVS>> started = new ArrayList<>(calls.size());
+        List<CompletableFuture<Void>> answered = new ArrayList<>(calls.size());
+        int next = 0;
+        try {
+            for (; next < calls.size(); ++next) {
+                long left = until - System.currentTimeMillis();
+                if (left <= 0 || !inFlight.tryAcquire(left, TimeUnit.MILLISECONDS)) break;
+                final BatchCall c = calls.get(next);
+                CompletableFuture<BeaconResponseSSVS> f = c.call.get();
+                started.add(f);
+                answered.add(f.handle((res, e) -> {
+                    inFlight.release();
+                    c.answer.accept(res, e);
+                    return null;
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        TimeoutException timeout = new TimeoutException("The batch hasn't been answered in " + batchDeadlineMs + " ms");
+        for (int i = next; i < calls.size(); ++i)
+            calls.get(i).answer.accept(null, timeout);
+        CompletableFuture<Void> all = CompletableFuture.allOf(answered.toArray(new CompletableFuture<?>[0]));
+        try {
+            all.get(Math.max(0, until - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            for (CompletableFuture<BeaconResponseSSVS> f : started)
+                f.completeExceptionally(timeout); // cancels the call, answers it
+            all.exceptionally(t -> null).join();
+        }
+    }
+
+    /*
+     * Resolves queries of a dataset held by the local store with one scan per window, see windows().
+     * Windows are scanned as regions of a query, concurrently, at most batchMaxRegions regions per query.
+     */
+    private void lookUp(DatasetID id, List<Integer> idx, Query[] queries, BeaconResponse[] responses) {
+        List<Window> windows = windows(idx, queries);
+        Map<String, CoreVariant> found = new HashMap<>();
+        for (int from = 0; from < windows.size(); from += batchMaxRegions) {
+            int to = Math.min(windows.size(), from + batchMaxRegions);
+            Chromosome[] c = new Chromosome[to - from];
+            int[] s = new int[to - from];
+            int[] e = new int[to - from];
+            for (int r = from; r < to; ++r) {
+                c[r - from] = windows.get(r).chr;
+                s[r - from] = windows.get(r).start;
+                e[r - from] = windows.get(r).end;
+            }
+            au.org.garvan.vsal.core.entity.CoreQuery cq = new au.org.garvan.vsal.core.entity.CoreQuery(
+                    c, s, e, null, null, id, null, Reference.HG19);
+            cq.setRegions(s.length);
+            cq.setLimit(null);
+            for (CoreVariant cv : store.variants(cq).getValue())
+                found.put(cv.getC() + ':' + cv.getS() + ':' + cv.getA(), cv);
+        }
+
+        for (int i : idx) {
+            Query q = queries[i];
+            CoreVariant cv = found.get(q.getChromosome().toString() + ':' + (q.getPosition() + 1) + ':' + q.getAllele());
             List<Allele> alleles = new LinkedList<>();
             Boolean exists = false;
             Integer observed = 0;
-            if (res.getVariants() != null && !res.getVariants().isEmpty()) {
-                Variant v = res.getVariants().get(0);
-                alleles.add(new Allele(q.getAllele(), v.getAf()));
-                exists = v.getAf() > 0;
-                observed = v.getAc();
+            if (cv != null) {
+                alleles.add(new Allele(q.getAllele(), cv.getAf().doubleValue()));
+                exists = cv.getAf() > 0;
+                observed = Math.round(cv.getAc());
             }
-            Response responseResource = new Response(exists, observed, alleles, "Beacon coordinates are 0-based!", null);
-            return new BeaconResponse(beacon.getId(), q, responseResource);
-        } catch (Exception e) {
-            au.org.garvan.vsal.beacon.entity.Error errorResource = new au.org.garvan.vsal.beacon.entity.Error("VS Runtime exception", e.getMessage());
-            Response responseResource = new Response(null, null, null, null, errorResource);
-            q.setPosition(q.getPosition()-1);
-            return new BeaconResponse(beacon.getId(), q, responseResource);
+            responses[i] = new BeaconResponse(beacon.getId(), q, new Response(exists, observed, alleles, "Beacon coordinates are 0-based!", null));
         }
     }
 
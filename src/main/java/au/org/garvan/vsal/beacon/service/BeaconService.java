@@ -24,8 +24,13 @@
 package au.org.garvan.vsal.beacon.service;
 
 import au.org.garvan.vsal.beacon.entity.Beacon;
+import au.org.garvan.vsal.beacon.entity.BeaconBatchJaxBean;
+import au.org.garvan.vsal.beacon.entity.BeaconBatchResponse;
 import au.org.garvan.vsal.beacon.entity.BeaconResponse;
 
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Beacon service.
  *
@@ -46,6 +51,39 @@ public interface BeaconService {
      */
     BeaconResponse query(String chrom, Integer pos, String allele, String ref, String dataset);
 
+    /**
+     * Executes a query without blocking the caller.
+     *
+     * @param chrom   chromosome
+     * @param pos     position
+     * @param allele  allele
+     * @param ref     reference genome (optional)
+     * @param dataset dataset
+     * @return beacon response, completed once backends have answered
+     */
+    CompletionStage<BeaconResponse> queryAsync(String chrom, Integer pos, String allele, String ref, String dataset);
+
+    /**
+     * Executes a query against several datasets in parallel.
+     * Datasets which haven't answered in time are reported with an error, others are aggregated.
+     *
+     * @param chrom    chromosome
+     * @param pos      position
+     * @param allele   allele
+     * @param ref      reference genome (optional)
+     * @param datasets datasets as csv, or "all"
+     * @return beacon response with a response per dataset
+     */
+    CompletionStage<BeaconResponse> queryDatasetsAsync(String chrom, Integer pos, String allele, String ref, String datasets);
+
+    /**
+     * Executes many queries at once.
+     *
+     * @param queries queries
+     * @return a response per query, in order of queries
+     */
+    BeaconBatchResponse queryBatch(List<BeaconBatchJaxBean.Item> queries);
+
     /**
      * Obtains beacon information.
      *
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.beacon.util;
+
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.util.ReadConfig;
+import au.org.garvan.vsal.core.util.VariantBloomFilter;
+
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Per dataset variant filters, configured as beacon.filter.&lt;dataset&gt;=&lt;file&gt;
+ * and memory-mapped at startup. See {@link VariantBloomFilter}.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class BeaconFilters {
+
+    private static final Pattern BASES = Pattern.compile("[ACGT]+"); // D, I can't be looked up
+    private static final Map<DatasetID, VariantBloomFilter> filters = load();
+
+    private static Map<DatasetID, VariantBloomFilter> load() {
+        Map<DatasetID, VariantBloomFilter> m = new EnumMap<>(DatasetID.class);
+        Properties p = ReadConfig.getProp();
+        for (DatasetID id : DatasetID.values()) {
+            String file = p.getProperty("beacon.filter." + id.name().toLowerCase());
+            if (file == null) continue;
+            try {
+                m.put(id, VariantBloomFilter.load(Paths.get(file)));
+                System.out.println("Variant filter for " + id + " has been loaded from " + file);
+            } catch (Exception e) {
+                System.out.println("Can't load variant filter for " + id + " from " + file);
+                e.printStackTrace();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @param start 1-based position
+     * @return false if the variant is definitely not in the dataset, true if it may be or there is no filter
+     */
+    public static boolean mightContain(DatasetID dataset, String contig, Integer start, String alt) {
+        VariantBloomFilter f = filters.get(dataset);
+        if (f == null || contig == null || start == null || alt == null || !BASES.matcher(alt).matches())
+            return true;
+        return f.mightContain(contig, start, alt);
+    }
+}
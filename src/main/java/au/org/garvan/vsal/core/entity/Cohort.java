@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Registered cohort: a named group of samples of a dataset, queried by name.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class Cohort {
+
+    public static final String STATUS_BUILDING = "building";
+    public static final String STATUS_READY = "ready";
+    public static final String STATUS_FAILED = "failed";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]{1,64}");
+
+    private final String id;       // <dataset>_cohort_<name>
+    private final DatasetID dataset;
+    private final Reference ref;
+    private final String name;
+    private final List<String> samples;
+    private final String status;
+    private final String physical; // where counts are kept, null until the first build completes
+    private final long updated;    // ms
+
+    public Cohort(String id, DatasetID dataset, Reference ref, String name, List<String> samples, String status,
+                  String physical, long updated) {
+        this.id = id;
+        this.dataset = dataset;
+        this.ref = ref;
+        this.name = name;
+        this.samples = samples;
+        this.status = status;
+        this.physical = physical;
+        this.updated = updated;
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public DatasetID getDataset() {
+        return dataset;
+    }
+
+    public Reference getRef() {
+        return ref;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getSamples() {
+        return samples;
+    }
+
+    public int getSize() {
+        return samples.size();
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getPhysical() {
+        return physical;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+}
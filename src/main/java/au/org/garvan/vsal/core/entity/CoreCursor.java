@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation point of a paged region query: index of a region in a query and
+ * the key (contig, start, ref, alt) of the last returned variant in it.
+ * <p>
+ * Clients see it as an opaque URL-safe token.
+ */
+public class CoreCursor {
+
+    private static final String VERSION = "1";
+    private static final String SEP = "\t";
+
+    private final int region;
+    private final String c;
+    private final int s;
+    private final String r;
+    private final String a;
+
+    public CoreCursor(int region, CoreVariant last) {
+        this(region, last.getC(), last.getS(), last.getR(), last.getA());
+    }
+
+    public CoreCursor(int region, String c, int s, String r, String a) {
+        this.region = region;
+        this.c = c;
+        this.s = s;
+        this.r = r;
+        this.a = a;
+    }
+
+    public String toToken() {
+        String plain = VERSION + SEP + region + SEP + c + SEP + s + SEP + r + SEP + a;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token token from a previous response
+     * @return cursor or null if token is malformed
+     */
+    public static CoreCursor fromToken(String token) {
+        if (token == null || token.isEmpty()) return null;
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] f = plain.split(SEP, -1);
+            if (f.length != 6 || !f[0].equals(VERSION)) return null;
+            int region = Integer.parseInt(f[1]);
+            int s = Integer.parseInt(f[3]);
+            if (region < 0 || f[2].isEmpty()) return null;
+            return new CoreCursor(region, f[2], s, f[4], f[5]);
+        } catch (IllegalArgumentException e) { // incl. NumberFormatException
+            return null;
+        }
+    }
+
+    /**
+     * @return true if a variant from the cursor's region comes after the cursor
+     */
+    public boolean isBefore(CoreVariant cv) {
+        return isBefore(cv.getS(), cv.getR(), cv.getA());
+    }
+
+    /**
+     * @return true if a variant (start, ref, alt) from the cursor's region comes after the cursor
+     */
+    public boolean isBefore(int start, String ref, String alt) {
+        int cmp = Integer.compare(start, s);
+        if (cmp == 0) cmp = ref.compareTo(r);
+        if (cmp == 0) cmp = alt.compareTo(a);
+        return cmp > 0;
+    }
+
+    public int getRegion() {
+        return region;
+    }
+
+    public String getC() {
+        return c;
+    }
+
+    public int getS() {
+        return s;
+    }
+
+    public String getR() {
+        return r;
+    }
+
+    public String getA() {
+        return a;
+    }
+}
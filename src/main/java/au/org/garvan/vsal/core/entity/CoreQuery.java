@@ -29,6 +29,7 @@ import au.org.garvan.vsal.beacon.entity.Chromosome;
 import au.org.garvan.vsal.beacon.entity.Reference;
 
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import java.util.List;
 
 @XmlRootElement(name = "CoreQuery")
@@ -43,13 +44,16 @@ public class CoreQuery {
     private Boolean selectHet = false;
     private DatasetID datasetId;
     private List<String> dbSNP;
+    private transient List<Integer> rsIds; // dbSNP as stored in rsid columns, null if any id is malformed
     private VariantType type;
     private Reference reference;
-    private Integer regions; // # of regions, i.e. == length of chromosome / positionStart / positionEnd
+    private Integer regions; // # of regions, i.e. == length of chromosome / positionStart / positionEnd, 1 for dbSNP only queries
     private Integer limit;
     private Integer skip;
+    private String cursor; // continuation token of a paged query, see CoreCursor
     private String jwt;
     private List<String> samples;
+    private String cohort; // name of a registered (pre-aggregated) cohort, instead of samples
     private Boolean conj = false; // find variants that exist in all samples
     private Boolean selectSamplesByGT = false;
     private Boolean returnAnnotations = false;
@@ -73,7 +77,7 @@ public class CoreQuery {
         this.reference = reference;
     }
 
-    public CoreQuery(Chromosome[] chromosome, int[] positionStart, int[] positionEnd, String refAllele, String altAllele, Boolean selectHom, Boolean selectHet, DatasetID datasetId, List<String> dbSNP, VariantType type, Reference reference, Integer regions, Integer limit, Integer skip, String jwt, List<String> samples, Boolean conj, Boolean selectSamplesByGT, Boolean returnAnnotations, Boolean pheno, Boolean genelist, Boolean hwe, Boolean chi2) {
+    public CoreQuery(Chromosome[] chromosome, int[] positionStart, int[] positionEnd, String refAllele, String altAllele, Boolean selectHom, Boolean selectHet, DatasetID datasetId, List<String> dbSNP, VariantType type, Reference reference, Integer regions, Integer limit, Integer skip, String jwt, List<String> samples, Boolean conj, Boolean selectSamplesByGT, Boolean returnAnnotations, Boolean pheno, Boolean genelist, Boolean hwe, Boolean chi2, String cursor) {
         this.chromosome = chromosome;
         this.positionStart = positionStart;
         this.positionEnd = positionEnd;
@@ -97,6 +101,7 @@ public class CoreQuery {
         this.genelist = genelist;
         this.hwe = hwe;
         this.chi2 = chi2;
+        this.cursor = cursor;
     }
 
     public Chromosome[] getChromosome() {
@@ -211,6 +216,23 @@ public class CoreQuery {
         this.skip = skip;
     }
 
+    @XmlTransient
+    public List<Integer> getRsIds() {
+        return rsIds;
+    }
+
+    public void setRsIds(List<Integer> rsIds) {
+        this.rsIds = rsIds;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public String getJwt() {
         return jwt;
     }
@@ -227,6 +249,14 @@ public class CoreQuery {
         this.samples = samples;
     }
 
+    public String getCohort() {
+        return cohort;
+    }
+
+    public void setCohort(String cohort) {
+        this.cohort = cohort;
+    }
+
     public Boolean getConj() {
         return conj;
     }
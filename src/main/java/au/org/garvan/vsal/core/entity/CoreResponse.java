@@ -46,6 +46,7 @@ public class CoreResponse {
     private String genelist;
     private Error error;
     private String status;
+    private String next; // continuation token, set if there may be more variants
 
     public CoreResponse() {
         // needed for JAXB
@@ -158,4 +159,12 @@ public class CoreResponse {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
 }
\ No newline at end of file
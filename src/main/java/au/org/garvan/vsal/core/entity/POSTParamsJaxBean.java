@@ -43,8 +43,10 @@ public class POSTParamsJaxBean {
     @XmlElement public String type;
     @XmlElement public Integer limit;
     @XmlElement public Integer skip;
+    @XmlElement public String cursor;
     @XmlElement public String jwt;
     @XmlElement public String samples;
+    @XmlElement public String cohort;
     @XmlElement public Boolean conj;
     @XmlElement public Boolean selectSamplesByGT;
     @XmlElement public Boolean returnAnnotations;
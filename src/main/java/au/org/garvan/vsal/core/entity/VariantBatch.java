@@ -0,0 +1,377 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar batch of variants with cohort-wide stats, as read from a <code>_variants</code> table.
+ * <p>
+ * Scan loops append rows to primitive arrays, so a row costs neither boxing nor an object
+ * graph. Contigs are stored as codes into a per-batch dictionary, dbSNP ids as ints.
+ * Rows are turned into {@link CoreVariant} only when a response is built, streamed rows
+ * are written as JSON straight from the columns.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantBatch {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final String[] TYPES = new String[256]; // VariantType names by byte code
+
+    static {
+        for (int b = 0; b < TYPES.length; ++b) {
+            VariantType t = VariantType.fromByte((byte) b);
+            TYPES[b] = (t == null) ? null : t.toString();
+        }
+    }
+
+    private int n;
+    private String[] contigs = new String[4]; // dictionary
+    private int nContigs;
+
+    private short[] contig; // codes into contigs
+    private int[] start;
+    private String[] ref;
+    private String[] alt;
+    private int[] rsid;     // 0 if none
+    private byte[] vtype;
+    private float[] ac;
+    private float[] af;
+    private int[] homc;
+    private int[] hetc;
+    private float[] hwe;    // NaN if not computed, allocated on demand
+
+    public VariantBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public VariantBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        contig = new short[capacity];
+        start = new int[capacity];
+        ref = new String[capacity];
+        alt = new String[capacity];
+        rsid = new int[capacity];
+        vtype = new byte[capacity];
+        ac = new float[capacity];
+        af = new float[capacity];
+        homc = new int[capacity];
+        hetc = new int[capacity];
+    }
+
+    public void add(String c, int s, String r, String a, int rs, byte t, float ac, float af, int homc, int hetc) {
+        if (n == start.length) grow(n * 2);
+        this.contig[n] = contigCode(c);
+        this.start[n] = s;
+        this.ref[n] = r;
+        this.alt[n] = a;
+        this.rsid[n] = rs;
+        this.vtype[n] = t;
+        this.ac[n] = ac;
+        this.af[n] = af;
+        this.homc[n] = homc;
+        this.hetc[n] = hetc;
+        if (hwe != null) hwe[n] = Float.NaN;
+        ++n;
+    }
+
+    public void addAll(VariantBatch other) {
+        for (int i = 0; i < other.n; ++i) add(other, i);
+    }
+
+    /**
+     * Appends row i of another batch.
+     */
+    public void add(VariantBatch other, int i) {
+        add(other.getContig(i), other.start[i], other.ref[i], other.alt[i], other.rsid[i], other.vtype[i],
+                other.ac[i], other.af[i], other.homc[i], other.hetc[i]);
+        if (other.hwe != null && !Float.isNaN(other.hwe[i])) setHwe(n - 1, other.hwe[i]);
+    }
+
+    /*
+     * Rows of a scan come contig by contig, so the code of the previous row is tried first.
+     */
+    private short contigCode(String c) {
+        if (n > 0 && contigs[contig[n - 1]].equals(c)) return contig[n - 1];
+        for (int i = 0; i < nContigs; ++i)
+            if (contigs[i].equals(c)) return (short) i;
+        if (nContigs == Short.MAX_VALUE) throw new IllegalStateException("Too many contigs in a batch");
+        if (nContigs == contigs.length) contigs = Arrays.copyOf(contigs, nContigs * 2);
+        contigs[nContigs] = c;
+        return (short) nContigs++;
+    }
+
+    private void grow(int capacity) {
+        contig = Arrays.copyOf(contig, capacity);
+        start = Arrays.copyOf(start, capacity);
+        ref = Arrays.copyOf(ref, capacity);
+        alt = Arrays.copyOf(alt, capacity);
+        rsid = Arrays.copyOf(rsid, capacity);
+        vtype = Arrays.copyOf(vtype, capacity);
+        ac = Arrays.copyOf(ac, capacity);
+        af = Arrays.copyOf(af, capacity);
+        homc = Arrays.copyOf(homc, capacity);
+        hetc = Arrays.copyOf(hetc, capacity);
+        if (hwe != null) hwe = Arrays.copyOf(hwe, capacity);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    public String getContig(int i) {
+        return contigs[contig[i]];
+    }
+
+    public int getStart(int i) {
+        return start[i];
+    }
+
+    public String getRef(int i) {
+        return ref[i];
+    }
+
+    public String getAlt(int i) {
+        return alt[i];
+    }
+
+    public int getRsid(int i) {
+        return rsid[i];
+    }
+
+    public byte getVtype(int i) {
+        return vtype[i];
+    }
+
+    public float getAc(int i) {
+        return ac[i];
+    }
+
+    public float getAf(int i) {
+        return af[i];
+    }
+
+    public int getHomc(int i) {
+        return homc[i];
+    }
+
+    public int getHetc(int i) {
+        return hetc[i];
+    }
+
+    public void setHwe(int i, float p) {
+        if (hwe == null) {
+            hwe = new float[start.length];
+            Arrays.fill(hwe, Float.NaN);
+        }
+        hwe[i] = p;
+    }
+
+    /**
+     * Same order as {@link CoreVariant#compareTo(CoreVariant)}: contig, start, ref, alt.
+     */
+    public int compare(int i, int j) {
+        int cmp = (contig[i] == contig[j]) ? 0 : contigs[contig[i]].compareTo(contigs[contig[j]]);
+        if (cmp == 0) cmp = Integer.compare(start[i], start[j]);
+        if (cmp == 0) cmp = ref[i].compareTo(ref[j]);
+        if (cmp == 0) cmp = alt[i].compareTo(alt[j]);
+        return cmp;
+    }
+
+    /**
+     * @return index of a variant in a sorted batch, or a negative number as in {@link Arrays#binarySearch(int[], int)}
+     */
+    public int indexOf(String c, int s, String r, String a) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = contigs[contig[mid]].compareTo(c);
+            if (cmp == 0) cmp = Integer.compare(start[mid], s);
+            if (cmp == 0) cmp = ref[mid].compareTo(r);
+            if (cmp == 0) cmp = alt[mid].compareTo(a);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Sorts rows in {@link #compare(int, int)} order. Ordered scans produce sorted batches,
+     * which are detected and left as they are.
+     */
+    public void sort() {
+        int[] perm = order();
+        if (perm != null) permute(perm);
+    }
+
+    /**
+     * @return rows in {@link #compare(int, int)} order (stable), null if the batch is sorted
+     */
+    public int[] order() {
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; ++i)
+            sorted = compare(i - 1, i) <= 0;
+        if (sorted) return null;
+
+        int[] perm = new int[n];
+        for (int i = 0; i < n; ++i) perm[i] = i;
+        mergeSort(perm, new int[n], 0, n);
+        return perm;
+    }
+
+    private void mergeSort(int[] a, int[] tmp, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        if (compare(a[mid - 1], a[mid]) <= 0) return;
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)
+            a[k++] = (compare(tmp[j], tmp[i]) < 0) ? tmp[j++] : tmp[i++];
+        while (i < mid) a[k++] = tmp[i++];
+        while (j < to) a[k++] = tmp[j++];
+    }
+
+    private void permute(int[] perm) {
+        VariantBatch sorted = range(perm, 0, n);
+        contig = sorted.contig;
+        start = sorted.start;
+        ref = sorted.ref;
+        alt = sorted.alt;
+        rsid = sorted.rsid;
+        vtype = sorted.vtype;
+        ac = sorted.ac;
+        af = sorted.af;
+        homc = sorted.homc;
+        hetc = sorted.hetc;
+        hwe = sorted.hwe;
+    }
+
+    /**
+     * @return a new batch with rows [from, to) of this one
+     */
+    public VariantBatch range(int from, int to) {
+        return range(null, from, to);
+    }
+
+    /**
+     * @return a new batch with the given rows of this one, in the given order
+     */
+    public VariantBatch select(int[] rows) {
+        return range(rows, 0, rows.length);
+    }
+
+    private VariantBatch range(int[] perm, int from, int to) {
+        VariantBatch b = new VariantBatch(to - from);
+        b.contigs = Arrays.copyOf(contigs, contigs.length);
+        b.nContigs = nContigs;
+        if (hwe != null) {
+            b.hwe = new float[Math.max(1, to - from)];
+            Arrays.fill(b.hwe, Float.NaN);
+        }
+        for (int k = from; k < to; ++k) {
+            int i = (perm == null) ? k : perm[k];
+            int j = b.n++;
+            b.contig[j] = contig[i];
+            b.start[j] = start[i];
+            b.ref[j] = ref[i];
+            b.alt[j] = alt[i];
+            b.rsid[j] = rsid[i];
+            b.vtype[j] = vtype[i];
+            b.ac[j] = ac[i];
+            b.af[j] = af[i];
+            b.homc[j] = homc[i];
+            b.hetc[j] = hetc[i];
+            if (hwe != null) b.hwe[j] = hwe[i];
+        }
+        return b;
+    }
+
+    public CoreVariant toCoreVariant(int i) {
+        return new CoreVariant(contigs[contig[i]], start[i], (rsid[i] == 0) ? null : " rs" + rsid[i],
+                alt[i], ref[i], TYPES[vtype[i] & 0xFF], ac[i], af[i], homc[i], hetc[i],
+                null, null, null, null, (hwe == null || Float.isNaN(hwe[i])) ? null : hwe[i], null, null);
+    }
+
+    public List<CoreVariant> toCoreVariants() {
+        List<CoreVariant> res = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) res.add(toCoreVariant(i));
+        return res;
+    }
+
+    /**
+     * Writes a row as Gson writes the {@link CoreVariant} of it: null fields omitted,
+     * HTML characters escaped.
+     */
+    public void writeJson(int i, Appendable out) throws IOException {
+        out.append("{\"c\":");
+        string(contigs[contig[i]], out);
+        out.append(",\"s\":").append(Integer.toString(start[i]));
+        if (rsid[i] != 0) out.append(",\"rs\":\" rs").append(Integer.toString(rsid[i])).append('"');
+        out.append(",\"a\":");
+        string(alt[i], out);
+        out.append(",\"r\":");
+        string(ref[i], out);
+        String t = TYPES[vtype[i] & 0xFF];
+        if (t != null) {
+            out.append(",\"t\":");
+            string(t, out);
+        }
+        out.append(",\"ac\":").append(Float.toString(ac[i]));
+        out.append(",\"af\":").append(Float.toString(af[i]));
+        out.append(",\"homc\":").append(Integer.toString(homc[i]));
+        out.append(",\"hetc\":").append(Integer.toString(hetc[i]));
+        if (hwe != null && !Float.isNaN(hwe[i])) out.append(",\"hwe\":").append(Float.toString(hwe[i]));
+        out.append('}');
+    }
+
+    private static void string(String s, Appendable out) throws IOException {
+        out.append('"');
+        for (int k = 0; k < s.length(); ++k) {
+            char ch = s.charAt(k);
+            if (ch == '"' || ch == '\\') {
+                out.append('\\').append(ch);
+            } else if (ch < 0x20 || ch == '<' || ch == '>' || ch == '&' || ch == '=' || ch == '\'' || ch == '\u2028' || ch == '\u2029') {
+                out.append(String.format("\\u%04x", (int) ch));
+            } else {
+                out.append(ch);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import java.util.AbstractMap;
+import java.util.List;
+
+/**
+ * Variants of a region query with db time, and a continuation token if the limit has been reached.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantPage extends AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> {
+    private static final long serialVersionUID = 1L;
+
+    private final String next;
+    private final int total;
+
+    public VariantPage(Long elapsedDbMs, List<CoreVariant> variants, String next) {
+        this(elapsedDbMs, variants, next, variants.size());
+    }
+
+    public VariantPage(Long elapsedDbMs, List<CoreVariant> variants, String next, int total) {
+        super(elapsedDbMs, variants);
+        this.next = next;
+        this.total = total;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
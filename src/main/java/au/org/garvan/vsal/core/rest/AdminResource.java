@@ -0,0 +1,179 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.rest;
+
+import au.org.garvan.vsal.core.entity.CoreResponse;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.service.AdminService;
+import au.org.garvan.vsal.core.util.CoreQueryUtils;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+
+/**
+ * VSAL Core admin rest resource.
+ * <p>
+ * All end points require a JWT with admin rights.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@Path("/admin")
+@Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
+public class AdminResource {
+
+    @Inject
+    private AdminService service;
+
+    /**
+     * VSAL REST end point: /admin/samples/refresh
+     * <p>
+     * Reloads the sample registry of a dataset.
+     *
+     * @param dataset dataset, string
+     * @param asm reference assembly {"hg38", "hg19", "hg18", "hg17", "hg16"}, string
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @POST
+    @Path("/samples/refresh")
+    public CoreResponse refreshSamples(@QueryParam("dataset") String dataset,
+                                       @QueryParam("asm") String asm,
+                                       @QueryParam("jwt") String jwt,
+                                       @Context HttpHeaders headers) {
+        return service.refreshSamples(DatasetID.fromString(dataset), CoreQueryUtils.normalizeReference(asm), getJwt(jwt, headers));
+    }
+
+    /**
+     * VSAL REST end point: /admin/results/invalidate
+     * <p>
+     * Drops cached query results of a dataset, of all datasets if dataset isn't given.
+     *
+     * @param dataset dataset, string
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @POST
+    @Path("/results/invalidate")
+    public CoreResponse invalidateResults(@QueryParam("dataset") String dataset,
+                                          @QueryParam("jwt") String jwt,
+                                          @Context HttpHeaders headers) {
+        return service.invalidateResults(dataset, getJwt(jwt, headers));
+    }
+
+    /**
+     * VSAL REST end point: /admin/cohorts/register
+     * <p>
+     * Registers a named group of samples (or replaces samples of a registered one) and builds
+     * its per-variant counts in the background. Once built, <i>/find?cohort=name</i> reads them
+     * instead of genotypes.
+     *
+     * @param dataset dataset, string
+     * @param asm reference assembly {"hg38", "hg19", "hg18", "hg17", "hg16"}, string
+     * @param name cohort name, letters, digits and _
+     * @param samples list of samples ids, csv
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @POST
+    @Path("/cohorts/register")
+    public CoreResponse registerCohort(@QueryParam("dataset") String dataset,
+                                       @QueryParam("asm") String asm,
+                                       @QueryParam("name") String name,
+                                       @QueryParam("samples") String samples,
+                                       @QueryParam("jwt") String jwt,
+                                       @Context HttpHeaders headers) {
+        return service.registerCohort(DatasetID.fromString(dataset), CoreQueryUtils.normalizeReference(asm), name, samples,
+                getJwt(jwt, headers));
+    }
+
+    /**
+     * VSAL REST end point: /admin/cohorts/rebuild
+     * <p>
+     * Rebuilds counts of a registered cohort, e.g. after genotypes have been reloaded.
+     *
+     * @param dataset dataset, string
+     * @param asm reference assembly {"hg38", "hg19", "hg18", "hg17", "hg16"}, string
+     * @param name cohort name
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @POST
+    @Path("/cohorts/rebuild")
+    public CoreResponse rebuildCohort(@QueryParam("dataset") String dataset,
+                                      @QueryParam("asm") String asm,
+                                      @QueryParam("name") String name,
+                                      @QueryParam("jwt") String jwt,
+                                      @Context HttpHeaders headers) {
+        return service.rebuildCohort(DatasetID.fromString(dataset), CoreQueryUtils.normalizeReference(asm), name, getJwt(jwt, headers));
+    }
+
+    /**
+     * VSAL REST end point: /admin/cohorts/drop
+     * <p>
+     * Removes a registered cohort and its counts.
+     *
+     * @param dataset dataset, string
+     * @param asm reference assembly {"hg38", "hg19", "hg18", "hg17", "hg16"}, string
+     * @param name cohort name
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @POST
+    @Path("/cohorts/drop")
+    public CoreResponse dropCohort(@QueryParam("dataset") String dataset,
+                                   @QueryParam("asm") String asm,
+                                   @QueryParam("name") String name,
+                                   @QueryParam("jwt") String jwt,
+                                   @Context HttpHeaders headers) {
+        return service.dropCohort(DatasetID.fromString(dataset), CoreQueryUtils.normalizeReference(asm), name, getJwt(jwt, headers));
+    }
+
+    /**
+     * VSAL REST end point: /admin/results/stats
+     * <p>
+     * Hit/miss counters of the query result cache.
+     *
+     * @param jwt jwt, string
+     * @return {@link CoreResponse}
+     */
+    @GET
+    @Path("/results/stats")
+    public CoreResponse resultsStats(@QueryParam("jwt") String jwt,
+                                     @Context HttpHeaders headers) {
+        return service.resultsStats(getJwt(jwt, headers));
+    }
+
+    private static String getJwt(String jwt, HttpHeaders headers) {
+        List<String> authzScheme = headers.getRequestHeader("Authorization");
+        String authz = (authzScheme != null && !authzScheme.isEmpty()) ? authzScheme.get(0) : null;
+        return (authz != null && authz.startsWith("Bearer")) ? authz.substring("Bearer".length()).trim() : jwt;
+    }
+}
@@ -36,6 +36,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import java.util.List;
 
 /**
@@ -48,6 +49,8 @@ import java.util.List;
 @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
 public class CoreResource {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     @Inject
     private CoreService service;
 
@@ -74,9 +77,11 @@ public class CoreResource {
      * @param type type, [SNV, MNV, INDEL, SV, CNV]
      * @param limit limit for # of variants in response
      * @param skip # of skipped variants
+     * @param cursor continuation token from <b>next</b> of a previous response, region queries only
      * @param jwt jwt, string
      * @param pheno return phenotypes, boolean
      * @param samples list of samples ids, csv
+     * @param cohort name of a registered cohort, instead of samples, region queries only
      * @param conj variant conjunction in samples, boolean
      * @param selectSamplesByGT return samples instead of variants, boolean
      * @param returnAnnotations return annotations in variants, boolean
@@ -99,8 +104,10 @@ public class CoreResource {
                               @QueryParam("type") String type,
                               @QueryParam("limit") Integer limit,
                               @QueryParam("skip") Integer skip,
+                              @QueryParam("cursor") String cursor,
                               @QueryParam("jwt") String jwt,
                               @QueryParam("samples") String samples,
+                              @QueryParam("cohort") String cohort,
                               @QueryParam("conj") Boolean conj,
                               @QueryParam("selectSamplesByGT") Boolean selectSamplesByGT,
                               @QueryParam("returnAnnotations") Boolean returnAnnotations,
@@ -114,12 +121,60 @@ public class CoreResource {
         List<String> authzScheme = headers.getRequestHeader("Authorization");
         String authz = (authzScheme != null && !authzScheme.isEmpty()) ? authzScheme.get(0) : null;
         CoreQuery coreQuery = CoreQueryUtils.getCoreQuery(chromosome, positionStart, positionEnd, refAllele, altAllele,
-                hom, het, asm, dataset, dbSNP, type, limit, skip, jwt, samples, conj, selectSamplesByGT,
+                hom, het, asm, dataset, dbSNP, type, limit, skip, cursor, jwt, samples, cohort, conj, selectSamplesByGT,
                 returnAnnotations, pheno, genelist, hwe, chi2, authz);
 
         return service.query(coreQuery);
     }
 
+    /**
+     * VSAL REST end point: /find, streaming mode, selected by <i>Accept: application/x-ndjson</i>.
+     * <p>
+     * Region queries only. Variants are written one per line as they are read, the last line is a
+     * {@link CoreResponse} with timings, total # of variants, continuation token or an error.
+     * <b>limit</b> is not capped, all variants in regions are returned if it's not set.
+     * Parameters are the same as for {@link #query}.
+     *
+     * @return NDJSON stream
+     */
+    @GET
+    @Produces(APPLICATION_NDJSON + ";qs=0.5")
+    public StreamingOutput queryStream(@QueryParam("chromosome") String chromosome,
+                                       @QueryParam("positionStart") String positionStart,
+                                       @QueryParam("positionEnd") String positionEnd,
+                                       @QueryParam("refAllele") String refAllele,
+                                       @QueryParam("altAllele") String altAllele,
+                                       @QueryParam("hom") Boolean hom,
+                                       @QueryParam("het") Boolean het,
+                                       @QueryParam("dataset") String dataset,
+                                       @QueryParam("dbSNP") List<String> dbSNP,
+                                       @QueryParam("type") String type,
+                                       @QueryParam("limit") Integer limit,
+                                       @QueryParam("skip") Integer skip,
+                                       @QueryParam("cursor") String cursor,
+                                       @QueryParam("jwt") String jwt,
+                                       @QueryParam("samples") String samples,
+                                       @QueryParam("cohort") String cohort,
+                                       @QueryParam("conj") Boolean conj,
+                                       @QueryParam("selectSamplesByGT") Boolean selectSamplesByGT,
+                                       @QueryParam("returnAnnotations") Boolean returnAnnotations,
+                                       @QueryParam("pheno") Boolean pheno,
+                                       @QueryParam("genelist") Boolean genelist,
+                                       @QueryParam("hwe") Boolean hwe,
+                                       @QueryParam("chi2") Boolean chi2,
+                                       @QueryParam("asm") String asm,
+                                       @Context HttpHeaders headers) {
+
+        List<String> authzScheme = headers.getRequestHeader("Authorization");
+        String authz = (authzScheme != null && !authzScheme.isEmpty()) ? authzScheme.get(0) : null;
+        CoreQuery coreQuery = CoreQueryUtils.getCoreQuery(chromosome, positionStart, positionEnd, refAllele, altAllele,
+                hom, het, asm, dataset, dbSNP, type, limit, skip, cursor, jwt, samples, cohort, conj, selectSamplesByGT,
+                returnAnnotations, pheno, genelist, hwe, chi2, authz);
+
+        coreQuery.setLimit((limit == null || limit < 0) ? null : limit); // no production limit for streams
+        return service.stream(coreQuery);
+    }
+
     /**
      * VSAL REST end point: /find
      * <p>
@@ -134,9 +189,29 @@ public class CoreResource {
         String authz = (authzScheme != null && !authzScheme.isEmpty()) ? authzScheme.get(0) : null;
         CoreQuery coreQuery = CoreQueryUtils.getCoreQuery(params.chromosome, params.positionStart, params.positionEnd,
                 params.refAllele, params.altAllele, params.hom, params.het, params.asm, params.dataset, params.dbSNP,
-                params.type, params.limit, params.skip, params.jwt, params.samples, params.conj, params.selectSamplesByGT,
+                params.type, params.limit, params.skip, params.cursor, params.jwt, params.samples, params.cohort, params.conj, params.selectSamplesByGT,
                 params.returnAnnotations, params.pheno, params.genelist, params.hwe, params.chi2, authz);
 
         return service.query(coreQuery);
     }
+
+    /**
+     * VSAL REST end point: /find, streaming mode, see {@link #queryStream}.
+     *
+     * @return NDJSON stream
+     */
+    @POST
+    @Consumes({"application/json"})
+    @Produces(APPLICATION_NDJSON + ";qs=0.5")
+    public StreamingOutput queryPostStream(POSTParamsJaxBean params, @Context HttpHeaders headers) {
+        List<String> authzScheme = headers.getRequestHeader("Authorization");
+        String authz = (authzScheme != null && !authzScheme.isEmpty()) ? authzScheme.get(0) : null;
+        CoreQuery coreQuery = CoreQueryUtils.getCoreQuery(params.chromosome, params.positionStart, params.positionEnd,
+                params.refAllele, params.altAllele, params.hom, params.het, params.asm, params.dataset, params.dbSNP,
+                params.type, params.limit, params.skip, params.cursor, params.jwt, params.samples, params.cohort, params.conj, params.selectSamplesByGT,
+                params.returnAnnotations, params.pheno, params.genelist, params.hwe, params.chi2, authz);
+
+        coreQuery.setLimit((params.limit == null || params.limit < 0) ? null : params.limit);
+        return service.stream(coreQuery);
+    }
 }
\ No newline at end of file
@@ -44,7 +44,7 @@ public class VsalCore extends Application {
 
     @Override
     public Set<Class<?>> getClasses() {
-        return new HashSet<>(Arrays.asList(CoreResource.class,CorsResponseFilter.class));
+        return new HashSet<>(Arrays.asList(CoreResource.class, AdminResource.class, CorsResponseFilter.class));
     }
 
 }
\ No newline at end of file
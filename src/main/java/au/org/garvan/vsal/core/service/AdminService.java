@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.beacon.entity.Error;
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreResponse;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.util.CoreJWT;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.List;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+
+import static au.org.garvan.vsal.core.service.CoreService.NANO_TO_MILLI;
+
+/**
+ * VSAL administration: cache refreshes, invalidation and stats, registered cohorts.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@RequestScoped
+public class AdminService {
+
+    public static final String ADMIN_ACCESS = "vsal/admin";
+
+    @Inject
+    private VariantStore store;
+
+    @Inject
+    private QueryResultCache results;
+
+    /*
+     * Returns null if JWT grants admin rights, otherwise an error response.
+     */
+    private CoreResponse verifyAdmin(String jwt, long start) {
+        if (jwt == null) {
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("JWT verification failed", "JWT is required for administration"));
+        }
+        try {
+            CoreJWT.verifyJWT(jwt, ADMIN_ACCESS);
+            return null;
+        } catch (JWTVerificationException e) {
+            e.printStackTrace();
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("JWT verification failed", e.getMessage()));
+        }
+    }
+
+    public CoreResponse refreshSamples(DatasetID dataset, Reference ref, String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        if (dataset == null) {
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("Incomplete Query", "A valid dataset is required"));
+        }
+
+        try {
+            int samples = store.refreshSamples(dataset, ref);
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, elapsed, 0, null, 0, null, null, null, null,
+                    samples + " samples of " + dataset + " loaded");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("VS Runtime Exception", e.getMessage()));
+        }
+    }
+
+    /*
+     * Drops cached results of a dataset, or all cached results if dataset is null.
+     */
+    public CoreResponse invalidateResults(String datasetName, String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        DatasetID dataset = DatasetID.fromString(datasetName);
+        if (datasetName != null && dataset == null) {
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("Malformed Query", "Unknown dataset " + datasetName));
+        }
+
+        if (dataset == null) results.invalidateAll();
+        else results.invalidate(dataset);
+        Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+        return new CoreResponse(null, elapsed, 0l, 0, null, 0, null, null, null, null,
+                "Cached results of " + ((dataset == null) ? "all datasets" : dataset.toString()) + " invalidated");
+    }
+
+    /*
+     * Registers a cohort (or replaces its samples) and queues a build of its counts.
+     */
+    public CoreResponse registerCohort(DatasetID dataset, Reference ref, String name, String samplesAsCSV, String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        if (dataset == null || !Cohort.isValidName(name) || samplesAsCSV == null || samplesAsCSV.trim().isEmpty()) {
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("Incomplete Query",
+                    "A valid dataset, cohort name (letters, digits and _) and samples are required"));
+        }
+
+        try {
+            List<String> samples = Arrays.asList(samplesAsCSV.trim().split("\\s*,\\s*"));
+            Cohort cohort = store.registerCohort(dataset, ref, name, samples);
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, elapsed, cohort.getSize(), null, 0, null, null, null, null,
+                    "Cohort " + cohort.getId() + " of " + cohort.getSize() + " samples registered, counts are being built");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("VS Runtime Exception", e.getMessage()));
+        }
+    }
+
+    public CoreResponse rebuildCohort(DatasetID dataset, Reference ref, String name, String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        try {
+            Cohort cohort = (dataset == null || !Cohort.isValidName(name)) ? null : store.rebuildCohort(dataset, ref, name);
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            if (cohort == null)
+                return new CoreResponse(null, elapsed, new Error("Malformed Query", "Unknown cohort " + name));
+            return new CoreResponse(null, elapsed, elapsed, cohort.getSize(), null, 0, null, null, null, null,
+                    "Counts of cohort " + cohort.getId() + " are being rebuilt");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("VS Runtime Exception", e.getMessage()));
+        }
+    }
+
+    public CoreResponse dropCohort(DatasetID dataset, Reference ref, String name, String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        try {
+            boolean dropped = dataset != null && Cohort.isValidName(name) && store.dropCohort(dataset, ref, name);
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            if (!dropped)
+                return new CoreResponse(null, elapsed, new Error("Malformed Query", "Unknown cohort " + name));
+            return new CoreResponse(null, elapsed, elapsed, 0, null, 0, null, null, null, null, "Cohort " + name + " dropped");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(null, elapsed, new Error("VS Runtime Exception", e.getMessage()));
+        }
+    }
+
+    public CoreResponse resultsStats(String jwt) {
+        final long start = System.nanoTime();
+
+        CoreResponse denied = verifyAdmin(jwt, start);
+        if (denied != null) return denied;
+
+        Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+        return new CoreResponse(null, elapsed, 0l, 0, null, 0, null, null, null, null, results.getStats());
+    }
+}
@@ -26,24 +26,31 @@
 package au.org.garvan.vsal.core.service;
 
 import au.org.garvan.vsal.beacon.entity.Error;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreCursor;
 import au.org.garvan.vsal.core.entity.CoreVariant;
 import au.org.garvan.vsal.core.entity.CoreQuery;
 import au.org.garvan.vsal.core.entity.CoreResponse;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import au.org.garvan.vsal.core.util.CoreStats;
 import au.org.garvan.vsal.core.util.CoreJWT;
-import au.org.garvan.vsal.core.util.ReadConfig;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.AbstractMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
 
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.google.gson.Gson;
 
 /**
  * VSAL core service.
@@ -56,21 +63,36 @@ public class CoreService {
 
     public static final int NANO_TO_MILLI = 1000000;
 
+    @Inject
+    private VariantStore store;
+
+    @Inject
+    private QueryResultCache results;
+
+    @Inject
+    private PhenoCache phenoFiles;
+
     @PostConstruct
     public void init() {
     }
 
-    public CoreResponse query(CoreQuery q) {
-
-        final long start = System.nanoTime();
-
+    /*
+     * Returns response with an error for a malformed or incomplete query, null for a valid one.
+     */
+    private static CoreResponse validate(CoreQuery q, long start) {
         if (q.getDatasetId() == null) {
             Error errorResource = new Error("Incomplete Query", "A valid dataset is required");
             Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
             return new CoreResponse(q, elapsed, errorResource);
         }
 
-        if (q.getChromosome() == null && q.getDbSNP().isEmpty() && !q.getPheno() && !q.getGenelist()) {
+        if (q.getRsIds() == null) {
+            Error errorResource = new Error("Malformed Query", "dbSNP ids must be like rs123");
+            Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+            return new CoreResponse(q, elapsed, errorResource);
+        }
+
+        if (q.getChromosome() == null && q.getRsIds().isEmpty() && !q.getPheno() && !q.getGenelist()) {
             Error errorResource = new Error("Incomplete Query", "Chromosome or dbSNP ID or pheno is required");
             Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
             return new CoreResponse(q, elapsed, errorResource);
@@ -112,6 +134,41 @@ public class CoreService {
             }
         }
 
+        if (q.getCohort() != null) {
+            String errDesc = null;
+            if (q.getSamples() != null)
+                errDesc = "Either samples or cohort can be given";
+            else if (!Cohort.isValidName(q.getCohort()))
+                errDesc = "Cohort names are made of letters, digits and _";
+            else if (q.getChromosome() == null)
+                errDesc = "Cohort queries require regions";
+            if (errDesc != null) {
+                Error errorResource = new Error("Malformed Query", errDesc);
+                Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                return new CoreResponse(q, elapsed, errorResource);
+            }
+        }
+
+        if (q.getCursor() != null) {
+            CoreCursor cursor = CoreCursor.fromToken(q.getCursor());
+            if (cursor == null || q.getChromosome() == null || cursor.getRegion() >= q.getRegions() ||
+                    !cursor.getC().equals(q.getChromosome()[cursor.getRegion()].toString())) {
+                Error errorResource = new Error("Malformed Query", "Cursor doesn't match regions of the query");
+                Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                return new CoreResponse(q, elapsed, errorResource);
+            }
+        }
+
+        return null;
+    }
+
+    public CoreResponse query(CoreQuery q) {
+
+        final long start = System.nanoTime();
+
+        CoreResponse invalid = validate(q, start);
+        if (invalid != null) return invalid;
+
         CoreResponse res;
 
         if (q.getPheno()) {
@@ -123,9 +180,7 @@ public class CoreService {
                 } else {
                     if (!q.getDatasetId().toString().equalsIgnoreCase("demo"))
                         CoreJWT.verifyJWT(q.getJwt(), q.getDatasetId().toString().toLowerCase() + "/pheno");
-                    Properties p = ReadConfig.getProp();
-                    String path = p.getProperty("phenoPath") + "/" + q.getDatasetId().toString().toLowerCase() + ".pheno.json";
-                    String pheno = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+                    String pheno = phenoFiles.get(q.getDatasetId().toString().toLowerCase() + ".pheno.json");
                     Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
                     res = new CoreResponse(q, elapsed, 0l, 0, null, 0, null, pheno, null, null, null);
                 }
@@ -150,9 +205,7 @@ public class CoreService {
                     String genelist = null; // no gene list for demo
                     if (!q.getDatasetId().toString().equalsIgnoreCase("demo")) {
                         CoreJWT.verifyJWT(q.getJwt(), q.getDatasetId().toString().toLowerCase() + "/pheno"); // same rights as for pheno data
-                        Properties p = ReadConfig.getProp();
-                        String path = p.getProperty("phenoPath") + "/genelist.json";
-                        genelist = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+                        genelist = phenoFiles.get("genelist.json");
                     }
                     Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
                     res = new CoreResponse(q, elapsed, 0l, 0, null, 0, null, null, genelist, null, null);
@@ -178,7 +231,7 @@ public class CoreService {
                     if (!q.getDatasetId().toString().equalsIgnoreCase("demo") &&
                         !q.getDatasetId().toString().equalsIgnoreCase("trio"))
                         CoreJWT.verifyJWT(q.getJwt(), q.getDatasetId().toString().toLowerCase() + "/gt");
-                    AbstractMap.SimpleImmutableEntry<Long,List<String>> sampleIDs = au.org.garvan.vsal.kudu.service.AsyncKuduCalls.selectSamplesByGT(q);
+                    AbstractMap.SimpleImmutableEntry<Long,List<String>> sampleIDs = store.selectSamplesByGT(q);
 
                     Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
                     res = new CoreResponse(q, elapsed, sampleIDs.getKey(), sampleIDs.getValue().size(), null, 0, sampleIDs.getValue(), null, null, null, null);
@@ -193,6 +246,42 @@ public class CoreService {
                 Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
                 res = new CoreResponse(q, elapsed, errorResource);
             }
+        } else if (q.getCohort() != null) {
+            // select variants in a registered cohort, from its counts
+            try {
+                if (q.getJwt() == null) {
+                    Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                    Error errorResource = new Error("JWT verification failed", "JWT is required for cohorts");
+                    res = new CoreResponse(q, elapsed, errorResource);
+                } else {
+                    if (!q.getDatasetId().toString().equalsIgnoreCase("demo") &&
+                        !q.getDatasetId().toString().equalsIgnoreCase("trio")) {
+                        CoreJWT.verifyJWT(q.getJwt(), q.getDatasetId().toString().toLowerCase() + "/gt");
+                    }
+                    Cohort cohort = store.getCohort(q.getDatasetId(), q.getReference(), q.getCohort());
+                    if (cohort == null || cohort.getPhysical() == null) {
+                        String errDesc = (cohort == null) ? "Unknown cohort " + q.getCohort() :
+                                "Cohort " + q.getCohort() + " is " + cohort.getStatus();
+                        Error errorResource = new Error("Malformed Query", errDesc);
+                        Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                        res = new CoreResponse(q, elapsed, errorResource);
+                    } else {
+                        AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> vars = store.cohortVariants(q, cohort);
+                        CoreStats.apply(q, vars.getValue(), cohort.getSize());
+                        Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                        res = new CoreResponse(q, elapsed, vars.getKey(), cohort.getSize(), vars.getValue(), vars.getValue().size(), null, null, null, null, null);
+                    }
+                }
+            } catch (JWTVerificationException e) {
+                e.printStackTrace();
+                Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                Error errorResource = new Error("JWT verification failed", e.getMessage());
+                res = new CoreResponse(q, elapsed, errorResource);
+            } catch (Exception e) {
+                Error errorResource = new Error("VS Runtime Exception", e.getMessage());
+                Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                res = new CoreResponse(q, elapsed, errorResource);
+            }
         } else if (q.getSamples() != null) {
             // select variants in virtual cohort
             try {
@@ -211,7 +300,8 @@ public class CoreService {
                         res = new CoreResponse(q, elapsed, 0l, 0, null, 0, null, null, null, null, "No samples selected");
                     } else {
                         AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> vars =
-                                au.org.garvan.vsal.kudu.service.AsyncKuduCalls.variantsInVirtualCohort(q, samples);
+                                store.variantsInVirtualCohort(q, samples);
+                        CoreStats.apply(q, vars.getValue(), samples.size());
                         Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
                         res = new CoreResponse(q, elapsed, vars.getKey(), samples.size(), vars.getValue(), vars.getValue().size(), null, null, null, null, null);
                     }
@@ -229,9 +319,18 @@ public class CoreService {
         } else {
             // select variants in regions
             try {
-                AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> vars = au.org.garvan.vsal.kudu.service.KuduCalls.variants(q);
+                boolean cacheable = QueryResultCache.isCacheable(q);
+                VariantPage vars = (cacheable) ? results.get(q) : null;
+                Long dbTime = 0l; // no db calls for cached results
+                if (vars == null) {
+                    vars = store.variants(q);
+                    CoreStats.apply(q, vars.getValue(), 0);
+                    dbTime = vars.getKey();
+                    if (cacheable) results.put(q, vars);
+                }
                 Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
-                res = new CoreResponse(q, elapsed, vars.getKey(), 0, vars.getValue(), vars.getValue().size(), null, null, null, null, null);
+                res = new CoreResponse(q, elapsed, dbTime, 0, vars.getValue(), vars.getValue().size(), null, null, null, null, null);
+                res.setNext(vars.getNext());
             } catch (Exception e) {
                 Error errorResource = new Error("VS Runtime Exception", e.getMessage());
                 Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
@@ -241,4 +340,52 @@ public class CoreService {
 
         return res;
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams variants of a region query as NDJSON: one variant per line, as they arrive from Kudu,
+     * followed by a line with {@link CoreResponse} holding timings, # of variants, continuation token
+     * or an error (without variants). Queries other than region queries get the error line only.
+     * No limit is applied unless requested.
+     */
+    public StreamingOutput stream(final CoreQuery q) {
+        final long start = System.nanoTime();
+        final VariantStore store = this.store;
+
+        CoreResponse invalid = validate(q, start);
+        if (invalid == null && (q.getPheno() || q.getGenelist() || q.getSelectSamplesByGT() || q.getSamples() != null || q.getCohort() != null)) {
+            Error errorResource = new Error("Unsupported Query", "Streaming is supported for region queries only");
+            invalid = new CoreResponse(q, (System.nanoTime() - start) / NANO_TO_MILLI, errorResource);
+        }
+        final CoreResponse error = invalid;
+
+        return out -> {
+            final Gson gson = new Gson();
+            final Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            CoreResponse summary = error;
+            if (summary == null) {
+                try {
+                    VariantPage vars = store.streamVariants(q, batch -> {
+                        CoreStats.apply(q, batch);
+                        for (int i = 0; i < batch.size(); ++i) {
+                            batch.writeJson(i, w);
+                            w.write('\n');
+                        }
+                        w.flush();
+                    });
+                    Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                    summary = new CoreResponse(q, elapsed, vars.getKey(), 0, null, vars.getTotal(), null, null, null, null, null);
+                    summary.setNext(vars.getNext());
+                } catch (IOException e) {
+                    throw e; // client has gone
+                } catch (Exception e) {
+                    Error errorResource = new Error("VS Runtime Exception", e.getMessage());
+                    Long elapsed = (System.nanoTime() - start) / NANO_TO_MILLI;
+                    summary = new CoreResponse(q, elapsed, errorResource);
+                }
+            }
+            gson.toJson(summary, w);
+            w.write('\n');
+            w.flush();
+        };
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.core.util.ReadConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Contents of phenotype and gene list files in phenoPath, read once and kept in memory.
+ * <p>
+ * A WatchService on phenoPath drops an entry as soon as its file is created, modified
+ * or deleted, the next request reads the file again. If phenoPath can't be watched,
+ * files are read on every request.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@ApplicationScoped
+public class PhenoCache {
+
+    private final Map<Path, String> files = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong(); // incremented on every change in phenoPath
+    private Path dir;
+    private WatchService watcher;
+
+    @PostConstruct
+    public void init() {
+        dir = Paths.get(ReadConfig.getProp().getProperty("phenoPath")).toAbsolutePath().normalize();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            Thread t = new Thread(this::watch, "pheno-watch");
+            t.setDaemon(true);
+            t.start();
+        } catch (IOException e) {
+            System.out.println("Can't watch " + dir + ", pheno files won't be cached");
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                generation.incrementAndGet();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) files.clear();
+                    else files.remove(dir.resolve((Path) event.context()));
+                }
+                if (!key.reset()) { // directory is gone
+                    files.clear();
+                    close();
+                    System.out.println("Stopped watching " + dir + ", pheno files won't be cached");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // undeployed
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        watcher = null;
+        files.clear();
+    }
+
+    /**
+     * @param fileName name of a file in phenoPath
+     * @return file contents, UTF-8
+     */
+    public String get(String fileName) throws IOException {
+        Path path = dir.resolve(fileName);
+        String content = files.get(path);
+        if (content != null) return content;
+
+        long gen = generation.get();
+        content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        if (watcher != null && gen == generation.get())
+            files.put(path, content); // not changed while being read
+        return content;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import au.org.garvan.vsal.core.util.ReadConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of region queries, shared by all requests.
+ * <p>
+ * Bounded by total # of cached variants (W-TinyLFU eviction) and expired after resultCacheTtlSec.
+ * Only queries which don't need a JWT are cacheable, i.e. no samples, pheno, gene list or
+ * samples selection, so authorisation is never bypassed. Keys don't include the JWT.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@ApplicationScoped
+public class QueryResultCache {
+
+    private static final char SEP = '|';
+
+    private Cache<String, VariantPage> cache;
+
+    @PostConstruct
+    public void init() {
+        Properties p = ReadConfig.getProp();
+        long maxVariants = Long.parseLong(p.getProperty("resultCacheMaxVariants", "1000000"));
+        long ttlSec = Long.parseLong(p.getProperty("resultCacheTtlSec", "300"));
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxVariants)
+                .weigher((String k, VariantPage v) -> v.getValue().size() + 1)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public static boolean isCacheable(CoreQuery q) {
+        return !q.getPheno() && !q.getGenelist() && !q.getSelectSamplesByGT() && q.getSamples() == null && q.getCohort() == null;
+    }
+
+    /*
+     * dbSNP ids as parsed ("rs123", "RS123" and "123" are the same id), in ascending order without
+     * duplicates - an id list is a single predicate, its order doesn't change results.
+     */
+    private static String rsIds(CoreQuery q) {
+        return (q.getRsIds() == null) ? "null" : new TreeSet<>(q.getRsIds()).toString();
+    }
+
+    /*
+     * Normalised query, dataset first to invalidate per dataset.
+     */
+    private static String key(CoreQuery q) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(q.getDatasetId()).append(SEP)
+                .append(q.getReference()).append(SEP)
+                .append(Arrays.toString(q.getChromosome())).append(SEP)
+                .append(Arrays.toString(q.getPositionStart())).append(SEP)
+                .append(Arrays.toString(q.getPositionEnd())).append(SEP)
+                .append(q.getRefAllele()).append(SEP)
+                .append(q.getAltAllele()).append(SEP)
+                .append(q.getType()).append(SEP)
+                .append(rsIds(q)).append(SEP)
+                .append(q.getSelectHom()).append(SEP)
+                .append(q.getSelectHet()).append(SEP)
+                .append(q.getLimit()).append(SEP)
+                .append(q.getSkip()).append(SEP)
+                .append(q.getCursor()).append(SEP)
+                .append(q.getHwe()).append(SEP)
+                .append(q.getChi2());
+        return sb.toString();
+    }
+
+    /**
+     * @return cached page or null. Cached variants are shared and must not be modified.
+     */
+    public VariantPage get(CoreQuery q) {
+        return cache.getIfPresent(key(q));
+    }
+
+    public void put(CoreQuery q, VariantPage page) {
+        cache.put(key(q), page);
+    }
+
+    public void invalidate(DatasetID dataset) {
+        final String prefix = dataset.toString() + SEP;
+        cache.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public String getStats() {
+        CacheStats s = cache.stats();
+        return "entries=" + cache.estimatedSize() +
+                ", hits=" + s.hitCount() +
+                ", misses=" + s.missCount() +
+                ", hitRate=" + String.format("%.3f", s.hitRate()) +
+                ", evictions=" + s.evictionCount() +
+                ", variants=" + cache.policy().eviction().get().weightedSize().getAsLong();
+    }
+}
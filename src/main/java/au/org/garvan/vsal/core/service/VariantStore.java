@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import au.org.garvan.vsal.core.entity.VariantPage;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage of variants, genotypes, samples and cohorts of datasets.
+ * <p>
+ * Services only talk to a store, the one in use is chosen by <i>variantStore</i>,
+ * see {@link VariantStoreProducer}. Queries are validated by callers. Results carry
+ * time spent in storage (ms) and variants with cohort-wide stats, statistics
+ * requested by a query are computed by callers. Failures are thrown as RuntimeException.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public interface VariantStore {
+
+    /**
+     * Receives variants of a streamed query, batch by batch, in the order they are read.
+     */
+    interface VariantSink {
+        void accept(VariantBatch batch) throws IOException;
+    }
+
+    /**
+     * @return true if the store holds variants of a dataset
+     */
+    boolean hasVariants(DatasetID dataset, Reference ref);
+
+    /**
+     * Variants of query regions, in order of regions and in genomic order inside a region.
+     * The first skip variants are dropped, a page which reaches the limit carries a continuation token.
+     */
+    VariantPage variants(CoreQuery query);
+
+    /**
+     * Same variants as {@link #variants(CoreQuery)}, handed to a sink as they are read.
+     *
+     * @return db time, # of variants streamed and continuation token, without variants
+     */
+    VariantPage streamVariants(CoreQuery query, VariantSink sink) throws IOException;
+
+    /**
+     * Variants of an ad-hoc cohort with virtual cohort stats, from genotypes of its samples.
+     *
+     * @throws RuntimeException if a sample doesn't exist
+     */
+    AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variantsInVirtualCohort(CoreQuery query, Set<String> samples);
+
+    /**
+     * Names of samples with a genotype selected by a query in any of its regions.
+     */
+    AbstractMap.SimpleImmutableEntry<Long,List<String>> selectSamplesByGT(CoreQuery query);
+
+    /**
+     * Reloads samples of a dataset.
+     *
+     * @return # of samples
+     */
+    int refreshSamples(DatasetID dataset, Reference ref);
+
+    /**
+     * @return a registered cohort, null if there is no such cohort
+     */
+    Cohort getCohort(DatasetID dataset, Reference ref, String name);
+
+    /**
+     * Registers a cohort, or replaces samples of a registered one, and builds its counts.
+     * Counts may be built in the background, the cohort can be queried once it's ready.
+     *
+     * @throws RuntimeException if a sample doesn't exist
+     */
+    Cohort registerCohort(DatasetID dataset, Reference ref, String name, List<String> samples);
+
+    /**
+     * Builds counts of a registered cohort again.
+     *
+     * @return the cohort, null if there is no such cohort
+     */
+    Cohort rebuildCohort(DatasetID dataset, Reference ref, String name);
+
+    /**
+     * @return false if there is no such cohort
+     */
+    boolean dropCohort(DatasetID dataset, Reference ref, String name);
+
+    /**
+     * Variants of a ready cohort with its counts, in order of regions and in genomic
+     * order inside a region, skip and limit applied.
+     */
+    AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> cohortVariants(CoreQuery query, Cohort cohort);
+}
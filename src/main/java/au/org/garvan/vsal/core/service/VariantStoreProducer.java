@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.core.util.ReadConfig;
+import au.org.garvan.vsal.kudu.service.KuduClientManager;
+import au.org.garvan.vsal.kudu.service.KuduVariantStore;
+import au.org.garvan.vsal.memory.service.MemoryVariantStore;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import java.util.Properties;
+
+/**
+ * Creates the {@link VariantStore} named by <i>variantStore</i>:
+ * <ul>
+ * <li><i>kudu</i> (default) - Kudu cluster at <i>kuduMaster</i>, see {@link KuduVariantStore}</li>
+ * <li><i>memory</i> - in-process store loaded from <i>memory.fixture.*</i> files, see {@link MemoryVariantStore}</li>
+ * </ul>
+ * The Kudu client is only created when Kudu is the store.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@ApplicationScoped
+public class VariantStoreProducer {
+
+    @Inject
+    private Instance<KuduClientManager> kudu;
+
+    private VariantStore store;
+
+    @PostConstruct
+    public void init() {
+        Properties p = ReadConfig.getProp();
+        String kind = p.getProperty("variantStore", "kudu");
+        if (kind.equalsIgnoreCase("memory")) {
+            store = MemoryVariantStore.load(p);
+        } else {
+            KuduClientManager manager = kudu.get();
+            manager.getClient(); // client proxies create beans on the first call
+            store = new KuduVariantStore(manager);
+        }
+        System.out.println("Variant store: " + kind.toLowerCase());
+    }
+
+    /*
+     * ApplicationScoped beans are created lazily, observing the initialization
+     * of the application context creates the store at deployment.
+     */
+    public void onStartup(@Observes @Initialized(ApplicationScoped.class) Object init) {
+    }
+
+    @Produces
+    public VariantStore getStore() {
+        return store;
+    }
+}
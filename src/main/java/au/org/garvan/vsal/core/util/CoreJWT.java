@@ -30,55 +30,163 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
 
-import com.auth0.jwk.Jwk;
-import com.auth0.jwk.JwkException;
 import com.auth0.jwk.JwkProvider;
-import com.auth0.jwk.UrlJwkProvider;
+import com.auth0.jwk.JwkProviderBuilder;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 
+import java.util.AbstractMap;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * JWT verification.
+ * <p>
+ * Public keys are fetched from the issuer's JWKS by kid, refreshed in the background and
+ * looked up at a limited rate for unknown kids, so key rotation doesn't need a redeploy.
+ * Tokens without kid are verified with the issuer's only key.
+ * Verifiers are reused per (issuer, kid, access). Tokens verified for an access are
+ * remembered by hash until they expire (at most jwtVerifiedCacheSec), repeated calls with
+ * the same token skip RSA verification.
+ */
 public class CoreJWT {
 
-    private static volatile RSAPublicKey pubKey;
-
-    public static RSAPublicKey getRSAPublicKey(String token, String issuer) {
-        RSAPublicKey key = pubKey; // single volatile read
-        if (key == null) {
-            synchronized (CoreJWT.class) {
-                if (pubKey == null) {
-                    try {
-                        // getting pub key from Auth0
-                        JwkProvider provider = new UrlJwkProvider(issuer);
-                        DecodedJWT jwt = JWT.decode(token);
-                        Jwk jwk = provider.get(jwt.getKeyId());  // Get the kid from received JWT token
-                        pubKey = (RSAPublicKey) jwk.getPublicKey();
-                        System.out.println("Public key has been acquired from Auth0");
-                    } catch (JwkException e) {
-                        e.printStackTrace();
-                    }
+    private static final String SEP = "\n";
+    private static final int LEEWAY_SEC = 12; // leeway window in seconds
+
+    private static final Properties p = ReadConfig.getProp();
+    private static final String issuer = p.getProperty("jwtIssuer");
+    private static final String accessClaim = p.getProperty("jwtAccessClaim");
+    private static final long verifiedTtlMs = TimeUnit.SECONDS.toMillis(Long.parseLong(p.getProperty("jwtVerifiedCacheSec", "300")));
+
+    private static final String NO_KID = ""; // key of tokens without kid, the issuer's only key
+
+    // JWKS lookups, at most 10 per minute, created on first use
+    private static volatile JwkProvider jwks;
+    private static String jwksError; // configuration error, reported once
+
+    private static final long jwksRefreshMin = Long.parseLong(p.getProperty("jwksRefreshMin", "60"));
+    private static final long jwksExpireMin = Long.parseLong(p.getProperty("jwksExpireMin", String.valueOf(3 * jwksRefreshMin)));
+
+    // public keys by kid. A failed refresh (e.g. the key has been revoked) keeps the old key,
+    // it stops verifying once it expires
+    private static final LoadingCache<String, RSAPublicKey> keys = Caffeine.newBuilder()
+            .maximumSize(100)
+            .refreshAfterWrite(jwksRefreshMin, TimeUnit.MINUTES)
+            .expireAfterWrite(jwksExpireMin, TimeUnit.MINUTES)
+            .build(kid -> {
+                RSAPublicKey key = (RSAPublicKey) jwks().get(NO_KID.equals(kid) ? null : kid).getPublicKey();
+                System.out.println("Public key " + kid + " has been acquired from " + issuer);
+                return key;
+            });
+
+    // verifiers by issuer, kid & access, with the key they were built for
+    private static final Cache<String, Map.Entry<RSAPublicKey, JWTVerifier>> verifiers = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .build();
+
+    // expiration (ms) of verified tokens by token hash & access
+    private static final Cache<String, Long> verified = Caffeine.newBuilder()
+            .maximumSize(Long.parseLong(p.getProperty("jwtVerifiedCacheSize", "10000")))
+            .expireAfter(new Expiry<String, Long>() {
+                @Override
+                public long expireAfterCreate(String key, Long exp, long currentTime) {
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, exp - System.currentTimeMillis()));
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Long exp, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, exp, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, Long exp, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    private static JwkProvider jwks() throws JWTVerificationException {
+        JwkProvider provider = jwks;
+        if (provider != null) return provider;
+        synchronized (CoreJWT.class) {
+            if (jwks == null && jwksError == null) {
+                try {
+                    if (issuer == null || issuer.trim().isEmpty())
+                        throw new IllegalArgumentException("jwtIssuer isn't set");
+                    jwks = new JwkProviderBuilder(issuer).cached(false).rateLimited(10, 1, TimeUnit.MINUTES).build();
+                } catch (RuntimeException e) {
+                    jwksError = "JWKS of issuer " + issuer + " isn't available: " + e.getMessage();
+                    System.out.println(jwksError);
                 }
-                key = pubKey;
             }
+            if (jwks == null) throw new JWTVerificationException(jwksError);
+            return jwks;
+        }
+    }
+
+    /**
+     * @param kid key id, empty for the issuer's only key
+     */
+    public static RSAPublicKey getRSAPublicKey(String kid) throws JWTVerificationException {
+        jwks(); // configuration errors aren't key errors
+        try {
+            return keys.get(kid);
+        } catch (CompletionException e) { // JwkException thrown by loader
+            Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+            cause.printStackTrace();
+            throw new JWTVerificationException("Public key " + kid + " isn't available: " + cause.getMessage());
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
         }
-        return key; // non-volatile local read, a tiny bit better performance
     }
 
     public static void verifyJWT(String token, String jwtAccessValue) throws JWTVerificationException {
-        Properties p = ReadConfig.getProp();
-        String issuer = p.getProperty("jwtIssuer");
-        RSAPublicKey publicKey = getRSAPublicKey(token, issuer);
-        Algorithm algorithm = Algorithm.RSA256(publicKey, null);
+        String tokenKey = hash(token) + SEP + jwtAccessValue;
+        Long exp = verified.getIfPresent(tokenKey);
+        if (exp != null && exp > System.currentTimeMillis()) return;
+
+        DecodedJWT jwt = JWT.decode(token);
+        String kid = (jwt.getKeyId() == null) ? NO_KID : jwt.getKeyId();
+        RSAPublicKey publicKey = getRSAPublicKey(kid);
 
         // verify
-        JWTVerifier verifier = JWT
-            .require(algorithm)
-            .withIssuer(issuer)
-            .withArrayClaim(p.getProperty("jwtAccessClaim"), jwtAccessValue)
-            .acceptLeeway(12) // leeway window in seconds
-            .build();
-        verifier.verify(token);
+        String verifierKey = issuer + SEP + kid + SEP + jwtAccessValue;
+        Map.Entry<RSAPublicKey, JWTVerifier> v = verifiers.getIfPresent(verifierKey);
+        if (v == null || v.getKey() != publicKey) { // new or refreshed key
+            JWTVerifier verifier = JWT
+                .require(Algorithm.RSA256(publicKey, null))
+                .withIssuer(issuer)
+                .withArrayClaim(accessClaim, jwtAccessValue)
+                .acceptLeeway(LEEWAY_SEC)
+                .build();
+            v = new AbstractMap.SimpleImmutableEntry<>(publicKey, verifier);
+            verifiers.put(verifierKey, v);
+        }
+        v.getValue().verify(token);
+
+        long now = System.currentTimeMillis();
+        Date expiresAt = jwt.getExpiresAt();
+        long until = (expiresAt == null) ? now + verifiedTtlMs : Math.min(expiresAt.getTime(), now + verifiedTtlMs);
+        if (until > now) verified.put(tokenKey, until);
     }
-}
\ No newline at end of file
+}
@@ -116,7 +116,7 @@ public class CoreQueryUtils {
      * @param ref denormalized genome
      * @return normalized genome
      */
-    private static Reference normalizeReference(String ref) {
+    public static Reference normalizeReference(String ref) {
         if (ref == null || ref.isEmpty()) {
             return Reference.HG19;
         }
@@ -140,8 +140,8 @@ public class CoreQueryUtils {
      */
     public static CoreQuery getCoreQuery(String chromosome, String position_start, String position_end, String ref_allele,
                                          String alt_allele, Boolean selectHom, Boolean selectHet, String asm, String dataset,
-                                         List<String> dbSNP, String type, Integer limit, Integer skip, String jwt,
-                                         String samplesAsCSV, Boolean samplesConj, Boolean selectSamplesByGT,
+                                         List<String> dbSNP, String type, Integer limit, Integer skip, String cursor, String jwt,
+                                         String samplesAsCSV, String cohort, Boolean samplesConj, Boolean selectSamplesByGT,
                                          Boolean returnAnnotations, Boolean returnPheno, Boolean returnGenelist,
                                          Boolean returnHWE, Boolean returnChi2, String authz) {
         Reference ref = normalizeReference(asm);
@@ -149,6 +149,7 @@ public class CoreQueryUtils {
         String altAllele= normalizeAllele(alt_allele);
         DatasetID datasetId = DatasetID.fromString(dataset);
         VariantType variantType = VariantType.fromString(type);
+        Integer skp = (skip == null || skip < 0) ? 0 : skip;
         Integer lim = (limit == null || limit < 0 || limit > MAX_VARIANTS) ? MAX_VARIANTS : limit; // production limits for Beta
         Boolean conj = (samplesConj == null) ? false : samplesConj;
         Boolean selectSamples = (selectSamplesByGT == null) ? false : selectSamplesByGT;
@@ -161,12 +162,43 @@ public class CoreQueryUtils {
         Boolean het = (selectHet == null) ? false : selectHet;
         List<String> samples = (samplesAsCSV != null) ? Arrays.asList(samplesAsCSV.split("\\s*,\\s*")) : null;
         Chromosome[] chr = csvStrToChr(chromosome);
-        Integer regions = (chr == null) ? 0 : chr.length;
+        List<Integer> rsIds = parseRsIds(dbSNP);
+        Integer regions = (chr != null) ? chr.length : (rsIds != null && !rsIds.isEmpty()) ? 1 : 0;
         String jwtFinal = (authz != null && authz.startsWith("Bearer")) ? authz.substring("Bearer".length()).trim() : jwt;
 
-        return new CoreQuery(chr, csvStrToInt(position_start), csvStrToInt(position_end), refAllele, altAllele,
-                             hom, het, datasetId, dbSNP, variantType, ref, regions, lim, skip, jwtFinal, samples,
-                             conj, selectSamples, retAnnot, pheno, genelist, hwe, chi2);
+        CoreQuery q = new CoreQuery(chr, csvStrToInt(position_start), csvStrToInt(position_end), refAllele, altAllele,
+                             hom, het, datasetId, dbSNP, variantType, ref, regions, lim, skp, jwtFinal, samples,
+                             conj, selectSamples, retAnnot, pheno, genelist, hwe, chi2,
+                             (cursor == null || cursor.isEmpty()) ? null : cursor);
+        q.setRsIds(rsIds);
+        q.setCohort((cohort == null || cohort.trim().isEmpty()) ? null : cohort.trim());
+        return q;
+    }
+
+    /**
+     * Converts dbSNP ids ("rs123", "RS123" or "123", csv allowed) to ints stored in rsid columns.
+     *
+     * @param dbSNP dbSNP ids
+     * @return ids, empty if none, null if any id is malformed
+     */
+    public static List<Integer> parseRsIds(List<String> dbSNP) {
+        List<Integer> ids = new ArrayList<>();
+        if (dbSNP == null) return ids;
+        for (String csv : dbSNP) {
+            if (csv == null) continue;
+            for (String id : csv.trim().split("\\s*,\\s*")) {
+                if (id.isEmpty()) continue;
+                String digits = (id.length() > 2 && id.substring(0, 2).equalsIgnoreCase("rs")) ? id.substring(2) : id;
+                try {
+                    int rs = Integer.parseInt(digits);
+                    if (rs <= 0) return null;
+                    ids.add(rs);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return ids;
     }
 
     /*
@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+
+import java.util.List;
+
+/**
+ * Statistics tests over retrieved variants.
+ * <p>
+ * hwe  - p-value of Chi-squared test for deviation from Hardy-Weinberg Equilibrium (cohort-wide).
+ * chi2 - p-value of Pearson's chi-squared allelic test, virtual cohort vs the rest of cohort.
+ * or   - allelic odds ratio, virtual cohort vs the rest of cohort.
+ * <p>
+ * Each call gathers counts into one set of primitive arrays sized to the input and the tests
+ * run as plain loops over them.
+ * Both tests have 1 degree of freedom, p-values come from a precomputed table of the
+ * chi-squared survival function.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CoreStats {
+
+    // survival function of chi-squared distribution with 1 df, ln(p) sampled on [0, TABLE_MAX_X]
+    private static final int TABLE_STEPS_PER_UNIT = 128;
+    private static final int TABLE_MAX_X = 64;
+    private static final double[] LN_P = new double[TABLE_MAX_X * TABLE_STEPS_PER_UNIT + 1];
+
+    static {
+        for (int i = 0; i < LN_P.length; ++i)
+            LN_P[i] = Math.log(chi2SurvivalDf1((double) i / TABLE_STEPS_PER_UNIT));
+    }
+
+    /*
+     * Complementary error function, fractional error < 1.2e-7 ("Numerical Recipes in C", 2nd ed, 6.2).
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+                t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 +
+                t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? ans : 2.0 - ans;
+    }
+
+    private static double chi2SurvivalDf1(double x) {
+        return erfc(Math.sqrt(x / 2.0));
+    }
+
+    /**
+     * p-value of chi-squared statistic with 1 degree of freedom.
+     *
+     * @param x chi-squared statistic
+     * @return p-value
+     */
+    public static double pValueDf1(double x) {
+        if (!(x > 0)) return 1.0;
+        if (x >= TABLE_MAX_X) return chi2SurvivalDf1(x);
+        double pos = x * TABLE_STEPS_PER_UNIT;
+        int i = (int) pos;
+        double f = pos - i;
+        return Math.exp(LN_P[i] + f * (LN_P[i + 1] - LN_P[i]));
+    }
+
+    /**
+     * Hardy-Weinberg Equilibrium test, Pearson's chi-squared with 1 df.
+     *
+     * @param homc alt allele hom counts
+     * @param hetc alt allele het counts
+     * @param size # of genotyped samples
+     * @param p    result p-values, NaN if the test can't be done
+     * @param n    # of variants
+     */
+    public static void hwe(int[] homc, int[] hetc, int[] size, float[] p, int n) {
+        for (int i = 0; i < n; ++i) {
+            double samples = size[i];
+            double aa = homc[i];
+            double ab = hetc[i];
+            double rr = samples - aa - ab;
+            if (samples <= 0 || rr < 0) {
+                p[i] = Float.NaN;
+                continue;
+            }
+            double af = (2 * aa + ab) / (2 * samples);
+            double eRR = samples * (1 - af) * (1 - af);
+            double eAB = 2 * samples * af * (1 - af);
+            double eAA = samples * af * af;
+            if (eRR == 0 || eAB == 0 || eAA == 0) { // monomorphic
+                p[i] = 1f;
+                continue;
+            }
+            double x = (rr - eRR) * (rr - eRR) / eRR + (ab - eAB) * (ab - eAB) / eAB + (aa - eAA) * (aa - eAA) / eAA;
+            p[i] = (float) pValueDf1(x);
+        }
+    }
+
+    /**
+     * Pearson's chi-squared allelic test and odds ratio for 2x2 tables:
+     * <pre>
+     *            alt   ref
+     * case        a     b
+     * control     c     d
+     * </pre>
+     * Haldane's correction (+0.5 to every cell) is used for odds ratio if any cell is 0.
+     *
+     * @param a  case alt allele counts
+     * @param b  case ref allele counts
+     * @param c  control alt allele counts
+     * @param d  control ref allele counts
+     * @param p  result p-values, NaN if the test can't be done
+     * @param or result odds ratios, NaN if the test can't be done
+     * @param n  # of variants
+     */
+    public static void chi2(int[] a, int[] b, int[] c, int[] d, float[] p, float[] or, int n) {
+        for (int i = 0; i < n; ++i) {
+            double ca = a[i], cb = b[i], cc = c[i], cd = d[i];
+            if (ca < 0 || cb < 0 || cc < 0 || cd < 0) {
+                p[i] = Float.NaN;
+                or[i] = Float.NaN;
+                continue;
+            }
+            double total = ca + cb + cc + cd;
+            double denom = (ca + cb) * (cc + cd) * (ca + cc) * (cb + cd);
+            double det = ca * cd - cb * cc;
+            p[i] = (denom == 0) ? 1f : (float) pValueDf1(total * det * det / denom);
+            if (ca == 0 || cb == 0 || cc == 0 || cd == 0) {
+                ca += 0.5; cb += 0.5; cc += 0.5; cd += 0.5;
+            }
+            or[i] = (float) ((ca * cd) / (cb * cc));
+        }
+    }
+
+    /*
+     * # of genotyped samples for a variant, derived from alt allele count and frequency.
+     */
+    private static int cohortSize(CoreVariant cv) {
+        Float ac = cv.getAc();
+        Float af = cv.getAf();
+        if (ac == null || af == null || !(af > 0)) return 0;
+        return Math.round(ac / (2 * af));
+    }
+
+    /**
+     * Computes statistics tests requested in a query and stores them in variants.
+     *
+     * @param q        query, tests are selected by hwe and chi2 flags
+     * @param variants variants with cohort-wide (and virtual cohort for chi2) stats
+     * @param vcSize   virtual cohort size, chi2 is skipped if 0
+     */
+    public static void apply(CoreQuery q, List<CoreVariant> variants, int vcSize) {
+        boolean hwe = q.getHwe() != null && q.getHwe();
+        boolean chi2 = q.getChi2() != null && q.getChi2() && vcSize > 0;
+        if (variants == null || variants.isEmpty() || (!hwe && !chi2)) return;
+
+        int n = variants.size();
+        int[] homc = new int[n];
+        int[] hetc = new int[n];
+        int[] size = new int[n];
+        int[] ca = new int[n];
+        int[] cb = new int[n];
+        int[] cc = new int[n];
+        int[] cd = new int[n];
+        boolean[] valid = new boolean[n];
+
+        // gather
+        int i = 0;
+        for (CoreVariant cv : variants) {
+            size[i] = cohortSize(cv);
+            valid[i] = size[i] > 0 && cv.getHomc() != null && cv.getHetc() != null;
+            if (valid[i]) {
+                homc[i] = cv.getHomc();
+                hetc[i] = cv.getHetc();
+            }
+            if (chi2 && valid[i] && cv.getVac() != null) {
+                int vac = Math.round(cv.getVac());
+                int ac = Math.round(cv.getAc());
+                ca[i] = vac;
+                cb[i] = 2 * vcSize - vac;
+                cc[i] = ac - vac;
+                cd[i] = 2 * (size[i] - vcSize) - cc[i];
+            } else {
+                ca[i] = -1; // invalid table
+            }
+            ++i;
+        }
+
+        float[] hweP = new float[n];
+        float[] chi2P = new float[n];
+        float[] or = new float[n];
+        if (hwe) hwe(homc, hetc, size, hweP, n);
+        if (chi2) chi2(ca, cb, cc, cd, chi2P, or, n);
+
+        // scatter
+        i = 0;
+        for (CoreVariant cv : variants) {
+            if (hwe && valid[i] && !Float.isNaN(hweP[i]))
+                cv.setHwe(hweP[i]);
+            if (chi2 && !Float.isNaN(chi2P[i])) {
+                cv.setChi2(chi2P[i]);
+                cv.setOr(or[i]);
+            }
+            ++i;
+        }
+    }
+
+    /**
+     * Computes HWE test of a query in a columnar batch, chi2 needs a virtual cohort and doesn't apply.
+     *
+     * @param q     query, the test is selected by hwe flag
+     * @param batch variants with cohort-wide stats
+     */
+    public static void apply(CoreQuery q, VariantBatch batch) {
+        if (q.getHwe() == null || !q.getHwe() || batch.isEmpty()) return;
+
+        int n = batch.size();
+        int[] homc = new int[n];
+        int[] hetc = new int[n];
+        int[] size = new int[n];
+        float[] p = new float[n];
+        for (int i = 0; i < n; ++i) {
+            float af = batch.getAf(i);
+            size[i] = (af > 0) ? Math.round(batch.getAc(i) / (2 * af)) : 0;
+            homc[i] = batch.getHomc(i);
+            hetc[i] = batch.getHetc(i);
+        }
+        hwe(homc, hetc, size, p, n);
+        for (int i = 0; i < n; ++i)
+            if (size[i] > 0 && !Float.isNaN(p[i]))
+                batch.setHwe(i, p[i]);
+    }
+}
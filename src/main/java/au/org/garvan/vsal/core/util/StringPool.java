@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import au.org.garvan.vsal.beacon.entity.Chromosome;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical instances of strings repeated in every variant row: contigs and alleles.
+ * <p>
+ * Contigs are resolved through a fixed table built from {@link Chromosome}. Short alleles go
+ * through a lock-free direct-mapped pool: a slot holds the last string hashed to it, a
+ * collision simply replaces it. Equal values mostly share one instance, so rows kept in
+ * results don't hold copies, hash codes are computed once per instance and
+ * <code>equals</code> short-circuits on identity.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public final class StringPool {
+
+    private static final int SLOTS = 1 << 14;
+    private static final int MAX_POOLED_LENGTH = 16;
+
+    private static final Chromosome[] NUMBERED = new Chromosome[23]; // 1 .. 22 by number
+
+    private static final AtomicReferenceArray<String> pool = new AtomicReferenceArray<>(SLOTS);
+
+    static {
+        for (Chromosome c : Chromosome.values()) {
+            String name = c.toString();
+            if (Character.isDigit(name.charAt(0)))
+                NUMBERED[Integer.parseInt(name)] = c;
+        }
+    }
+
+    private StringPool() {
+    }
+
+    /**
+     * @return chromosome of a contig name as stored in Kudu, null for contigs not in {@link Chromosome}
+     */
+    public static Chromosome chromosome(String c) {
+        if (c == null) return null;
+        switch (c.length()) {
+            case 1:
+                char ch = c.charAt(0);
+                if (ch >= '1' && ch <= '9') return NUMBERED[ch - '0'];
+                if (ch == 'X') return Chromosome.CHRX;
+                if (ch == 'Y') return Chromosome.CHRY;
+                return null;
+            case 2:
+                char d1 = c.charAt(0);
+                char d2 = c.charAt(1);
+                if (d1 >= '1' && d1 <= '2' && d2 >= '0' && d2 <= '9') {
+                    int n = (d1 - '0') * 10 + (d2 - '0');
+                    return (n < NUMBERED.length) ? NUMBERED[n] : null;
+                }
+                if (d1 == 'M' && d2 == 'T') return Chromosome.CHRMT;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return canonical contig name, or the argument for contigs not in {@link Chromosome}
+     */
+    public static String contig(String c) {
+        Chromosome chr = chromosome(c);
+        return (chr == null) ? c : chr.toString();
+    }
+
+    /**
+     * @return pooled instance of a short string (allele, genotype), long strings are returned as they are
+     */
+    public static String allele(String a) {
+        if (a == null || a.length() > MAX_POOLED_LENGTH) return a;
+        int h = a.hashCode();
+        int slot = (h ^ (h >>> 16)) & (SLOTS - 1);
+        String pooled = pool.get(slot);
+        if (pooled != null && pooled.equals(a)) return pooled;
+        pool.lazySet(slot, a);
+        return a;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter over variants (contig, start, alt).
+ * <p>
+ * Built by a scan of a <code>&lt;dataset&gt;_variants</code> table and stored in a file,
+ * which is memory-mapped read-only on load. "false" from {@link #mightContain} means
+ * the variant is definitely not in the dataset.
+ * <p>
+ * File layout: magic (4 bytes), version (int), # of hash functions (int), # of bits (long), bits.
+ * Hashes are computed from bytes of "contig:start:alt", so files are portable.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantBloomFilter {
+
+    private static final int MAGIC = 0x56534246; // VSBF
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+    private static final long MAX_BITS = 8L * (Integer.MAX_VALUE - HEADER_BYTES);
+
+    private final ByteBuffer bits; // position 0 is the first byte of bits
+    private final long numBits;
+    private final int numHashes;
+
+    private VariantBloomFilter(ByteBuffer bits, long numBits, int numHashes) {
+        this.bits = bits;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Empty filter sized for expected # of variants and false positive probability.
+     */
+    public static VariantBloomFilter create(long expectedVariants, double fpp) {
+        long n = Math.max(1, expectedVariants);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.min(MAX_BITS, Math.max(64, (m + 7) / 8 * 8));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new VariantBloomFilter(ByteBuffer.allocate((int) (m / 8)), m, k);
+    }
+
+    /**
+     * Maps a filter file read-only.
+     */
+    public static VariantBloomFilter load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (mb.getInt() != MAGIC || mb.getInt() != VERSION)
+                throw new IOException(file + " is not a variant filter");
+            int k = mb.getInt();
+            long m = mb.getLong();
+            if (k < 1 || m < 8 || m / 8 != ch.size() - HEADER_BYTES)
+                throw new IOException(file + " is truncated or corrupted");
+            return new VariantBloomFilter(mb.slice(), m, k);
+        }
+    }
+
+    public void writeTo(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(numHashes).putLong(numBits).flip();
+        ByteBuffer body = bits.duplicate();
+        body.clear();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) ch.write(header);
+            while (body.hasRemaining()) ch.write(body);
+        }
+    }
+
+    /*
+     * 64-bit FNV-1a with murmur3 finalizer.
+     */
+    private static long hash(byte[] key, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static byte[] key(String contig, int start, String alt) {
+        return (contig + ':' + start + ':' + alt).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void put(String contig, int start, String alt) {
+        byte[] key = key(contig, start, alt);
+        long h1 = hash(key, 0);
+        long h2 = hash(key, 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < numHashes; ++i) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            int idx = (int) (bit >>> 3);
+            bits.put(idx, (byte) (bits.get(idx) | (1 << (bit & 7))));
+        }
+    }
+
+    /**
+     * @return false if the variant is definitely not in the filter
+     */
+    public boolean mightContain(String contig, int start, String alt) {
+        byte[] key = key(contig, start, alt);
+        long h1 = hash(key, 0);
+        long h2 = hash(key, 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < numHashes; ++i) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits.get((int) (bit >>> 3)) & (1 << (bit & 7))) == 0)
+                return false;
+        }
+        return true;
+    }
+}
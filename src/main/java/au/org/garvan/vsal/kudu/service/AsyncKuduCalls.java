@@ -25,15 +25,17 @@
 
 package au.org.garvan.vsal.kudu.service;
 
+import au.org.garvan.vsal.beacon.entity.Chromosome;
 import au.org.garvan.vsal.core.entity.CoreQuery;
 import au.org.garvan.vsal.core.entity.CoreVariant;
 import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantBatch;
 import au.org.garvan.vsal.core.entity.VariantType;
 import au.org.garvan.vsal.core.service.CoreService;
 import au.org.garvan.vsal.core.util.ReadConfig;
+import au.org.garvan.vsal.core.util.StringPool;
 import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
-import org.apache.kudu.Schema;
 import org.apache.kudu.client.*;
 
 import java.util.*;
@@ -45,86 +47,72 @@ public class AsyncKuduCalls {
 
     private static final long SCAN_REQUEST_TIMEOUT = 180000; // ms, == 3 min
 
-    private static class Counters {
-        int sc = 0;   // alt allele sample count
-        int homc = 0; // alt allele hom count
-    }
+    /*
+     * How genotypes of a virtual cohort are fetched from a _gt table:
+     * PER_SAMPLE - one scanner per sample per region, sample_id == predicate
+     * IN_LIST    - one scanner per region, sample_id IN (cohort) predicate
+     * REGION     - one scanner per region without sample predicate, rows of other samples are dropped client side
+     */
+    private enum GTScanStrategy { PER_SAMPLE, IN_LIST, REGION }
 
-    private static class Variant {
+    // genotype codes
+    private static final byte GT_MISSING = 0;
+    private static final byte GT_HOM_ALT = 1;
+    private static final byte GT_OTHER = 2;
+
+    static class Variant {
         CoreVariant cv;
-        String gt;
+        byte gt;
 
-        public Variant(CoreVariant cv, String gt) {
+        public Variant(CoreVariant cv, byte gt) {
             this.cv = cv;
             this.gt = gt;
         }
     }
 
-    private static List<Integer> getSampleIDsByNames(String tableName, HashSet<String> samples) {
-        List<Integer> sid = new LinkedList<>();
-        final KuduClient client = new KuduClient.KuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
+    /*
+     * GT strings are decoded once, when a row is read.
+     */
+    private static byte gtCode(String gt) {
+        if (gt == null) return GT_MISSING;
+        if (gt.length() == 3 && gt.charAt(0) == '1' && gt.charAt(2) == '1' && (gt.charAt(1) == '/' || gt.charAt(1) == '|'))
+            return GT_HOM_ALT;
+        return GT_OTHER;
+    }
 
+    private static SampleRegistry getSamples(KuduClientManager kudu, String tableName) {
         try {
-            KuduTable table = client.openTable(tableName);
-            Schema schema = table.getSchema();
-            for (String name: samples) {
-                KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table);
-                ksb.setProjectedColumnNames(Collections.singletonList("sample_id"));
-                ksb.addPredicate(newComparisonPredicate(schema.getColumn("sample_name"), KuduPredicate.ComparisonOp.EQUAL, name));
-                KuduScanner scanner = ksb.build();
-                boolean found = false;
-                while (scanner.hasMoreRows()) {
-                    RowResultIterator results = scanner.nextRows();
-                    while (results != null && results.hasNext()) {
-                        sid.add(results.next().getInt(0));
-                        found = true;
-                    }
-                }
-                scanner.close();
-                if (!found)
-                    throw new RuntimeException("Inconsistency - sample doesn't exist: " + name);
-            }
-            if (samples.size() != sid.size())
-                throw new RuntimeException("Inconsistency: some samples have several Ids");
+            return kudu.getSamples(tableName);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
-        } finally {
-            try {
-                client.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
         }
-        return sid;
     }
 
-    private static AsyncKuduScanner getAsyncScannerGT(AsyncKuduClient client, KuduTable gtTable, List<String> columns, CoreQuery query, Integer region, Integer sampleId)
-            throws KuduException {
-        Schema schema = gtTable.getSchema();
-        AsyncKuduScanner.AsyncKuduScannerBuilder aksb = client.newScannerBuilder(gtTable);
+    private static AsyncKuduScanner getAsyncScannerGT(AsyncKuduClient client, KuduTableHandle gtTable, List<String> columns, CoreQuery query, Integer region,
+                                                      KuduPredicate samplePredicate, Integer lim) {
+        AsyncKuduScanner.AsyncKuduScannerBuilder aksb = client.newScannerBuilder(gtTable.getTable());
         aksb.setProjectedColumnNames(columns);
         if (query.getChromosome() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("contig"), KuduPredicate.ComparisonOp.EQUAL, query.getChromosome()[region].toString()));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getContig(), KuduPredicate.ComparisonOp.EQUAL, query.getChromosome()[region].toString()));
         if (query.getPositionStart() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.GREATER_EQUAL, query.getPositionStart()[region]));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getStart(), KuduPredicate.ComparisonOp.GREATER_EQUAL, query.getPositionStart()[region]));
         if (query.getPositionEnd() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.LESS_EQUAL, query.getPositionEnd()[region]));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getStart(), KuduPredicate.ComparisonOp.LESS_EQUAL, query.getPositionEnd()[region]));
         if (query.getType() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("vtype"), KuduPredicate.ComparisonOp.EQUAL, query.getType().toByte()));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getVtype(), KuduPredicate.ComparisonOp.EQUAL, query.getType().toByte()));
         if (query.getRefAllele() != null && !query.getRefAllele().isEmpty())
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("ref"), KuduPredicate.ComparisonOp.EQUAL, query.getRefAllele()));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getRef(), KuduPredicate.ComparisonOp.EQUAL, query.getRefAllele()));
         if (query.getAltAllele() != null && !query.getAltAllele().isEmpty())
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("alt"), KuduPredicate.ComparisonOp.EQUAL, query.getAltAllele()));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getAlt(), KuduPredicate.ComparisonOp.EQUAL, query.getAltAllele()));
         if (query.getSelectHom() && !query.getSelectHet())
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("hom"), KuduPredicate.ComparisonOp.EQUAL, true));
+            aksb.addPredicate(newComparisonPredicate(gtTable.getHom(), KuduPredicate.ComparisonOp.EQUAL, true));
         if (!query.getSelectHom() && query.getSelectHet())
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("hom"), KuduPredicate.ComparisonOp.EQUAL, false));
-        if (query.getDbSNP() != null && !query.getDbSNP().isEmpty())
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("rsid"), KuduPredicate.ComparisonOp.EQUAL, query.getDbSNP().get(0)));
-        if (sampleId != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("sample_id"), KuduPredicate.ComparisonOp.EQUAL, sampleId));
-        Integer lim = query.getLimit();
+            aksb.addPredicate(newComparisonPredicate(gtTable.getHom(), KuduPredicate.ComparisonOp.EQUAL, false));
+        if (query.getRsIds() != null && !query.getRsIds().isEmpty())
+            aksb.addPredicate(KuduCalls.rsidPredicate(gtTable.getRsid(), query.getRsIds()));
+        if (samplePredicate != null)
+            aksb.addPredicate(samplePredicate);
         if (lim != null && lim >= 0)
             aksb.limit(lim);
         aksb.scanRequestTimeout(SCAN_REQUEST_TIMEOUT);
@@ -132,62 +120,52 @@ public class AsyncKuduCalls {
     }
 
 
-    private static AsyncKuduScanner getAsyncScannerVariantTableByVariant(AsyncKuduClient client, KuduTable varTable, List<String> columns,
-                                                                         CoreVariant cv, int lim) throws KuduException {
-        Schema schema = varTable.getSchema();
-        AsyncKuduScanner.AsyncKuduScannerBuilder aksb = client.newScannerBuilder(varTable);
+    private static AsyncKuduScanner getAsyncScannerVariantTableByStarts(AsyncKuduClient client, KuduTableHandle varTable, List<String> columns,
+                                                                        String contig, List<Integer> starts) {
+        AsyncKuduScanner.AsyncKuduScannerBuilder aksb = client.newScannerBuilder(varTable.getTable());
         aksb.setProjectedColumnNames(columns);
-        aksb.addPredicate(newComparisonPredicate(schema.getColumn("contig"), KuduPredicate.ComparisonOp.EQUAL, cv.getC()));
-        aksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.EQUAL, cv.getS()));
-        aksb.addPredicate(newComparisonPredicate(schema.getColumn("ref"), KuduPredicate.ComparisonOp.EQUAL, cv.getR()));
-        aksb.addPredicate(newComparisonPredicate(schema.getColumn("alt"), KuduPredicate.ComparisonOp.EQUAL, cv.getA()));
-        if (lim >= 0)
-            aksb.limit(lim);
+        aksb.addPredicate(newComparisonPredicate(varTable.getContig(), KuduPredicate.ComparisonOp.EQUAL, contig));
+        aksb.addPredicate(KuduPredicate.newInListPredicate(varTable.getStart(), starts));
         return aksb.build();
     }
 
-    private static AsyncKuduScanner getAsyncScannerVariantTableByRegion(AsyncKuduClient client, KuduTable varTable, List<String> columns,
-                                                                        CoreQuery query, int region) throws KuduException {
-        Schema schema = varTable.getSchema();
-        AsyncKuduScanner.AsyncKuduScannerBuilder aksb = client.newScannerBuilder(varTable);
-        aksb.setProjectedColumnNames(columns);
-        if (query.getChromosome() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("contig"), KuduPredicate.ComparisonOp.EQUAL, query.getChromosome()[region].toString()));
-        if (query.getPositionStart() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.GREATER_EQUAL, query.getPositionStart()[region]));
-        if (query.getPositionEnd() != null)
-            aksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.LESS_EQUAL, query.getPositionEnd()[region]));
-        return aksb.build();
-    }
+    /*
+     * Cohort-wide stats of selected variants, in place.
+     * Variants are sorted by primary key (contig, start, ref, alt) and cut into slices of at most
+     * cohortStatsMaxStarts distinct starts of one contig. A slice is fetched with a contig == and
+     * start IN-list scan, so only rows at selected positions are read, not whole regions, and
+     * is merge-joined with its rows once they are sorted. Slices are fetched concurrently.
+     */
+    static void updateWithCohortWideStats(KuduClientManager kudu, CoreQuery query, List<CoreVariant> selected) {
+        if (selected.isEmpty()) return;
+        int maxStarts = Integer.parseInt(ReadConfig.getProp().getProperty("cohortStatsMaxStarts", "1000"));
+        AsyncKuduClient asyncClient = kudu.getAsyncClient();
+        KuduTableHandle variantTable = getTable(kudu, getTableName(query.getDatasetId(), query.getReference(), "_variants"));
+        List<String> columns = Arrays.asList("contig", "start", "ref", "alt", "af", "ac", "homc", "hetc"); // projection
 
-    private static List<CoreVariant> asyncVariants(CoreQuery query) {
-        List<CoreVariant> coreVariants = new ArrayList<>(); // result
-        AsyncKuduClient asyncClient = new AsyncKuduClient.AsyncKuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
-        KuduTable variantTable = addCallBackToTable(asyncClient, query.getDatasetId() + "_variants");
+        List<CoreVariant> sorted = new ArrayList<>(selected);
+        Collections.sort(sorted);
+        List<Integer> slices = new ArrayList<>(); // slice i is [slices[i], slices[i + 1])
         List<AsyncKuduScanner> variantScanners = new LinkedList<>(); // to close them later
-        List< Deferred<List<CoreVariant>>> deferredVariantsWithCohortWideStats = new ArrayList<>(query.getRegions());
-        List<String> columns = Arrays.asList("contig", "start", "ref", "alt", "af", "ac", "homc", "hetc"); // projection
+        List<Deferred<VariantBatch>> deferredStats = new ArrayList<>();
 
         try {
-            final class AsyncVariantsByRegion {
+            final class AsyncVariantsByStarts {
                 final private AsyncKuduScanner asyncScanner;
 
-                private AsyncVariantsByRegion(AsyncKuduScanner asyncScanner) {
+                private AsyncVariantsByStarts(AsyncKuduScanner asyncScanner) {
                     this.asyncScanner = asyncScanner;
                 }
 
-                final class AsyncProcessRows implements Callback<Deferred<List<CoreVariant>>, RowResultIterator> {
-                    private final List<CoreVariant> res = new LinkedList<>();
+                final class AsyncProcessRows implements Callback<Deferred<VariantBatch>, RowResultIterator> {
+                    private final VariantBatch res = new VariantBatch();
 
                     @Override
-                    public Deferred<List<CoreVariant>> call(RowResultIterator results) {
+                    public Deferred<VariantBatch> call(RowResultIterator results) {
                         if (results != null) {
                             for (RowResult row : results) {
-                                CoreVariant cv = new CoreVariant(row.getString(0), row.getInt(1), null,
-                                        row.getString(3), row.getString(2), null, row.getFloat(5),
-                                        row.getFloat(4), row.getInt(6), row.getInt(7),
-                                        null, null, null, null, null, null, null);
-                                res.add(cv);
+                                res.add(StringPool.contig(row.getString(0)), row.getInt(1), StringPool.allele(row.getString(2)), StringPool.allele(row.getString(3)), 0, (byte) 0,
+                                        row.getFloat(5), row.getFloat(4), row.getInt(6), row.getInt(7));
                             }
                             if (asyncScanner.hasMoreRows()) {
                                 return asyncScanner.nextRows().addBothDeferring(this);
@@ -197,49 +175,86 @@ public class AsyncKuduCalls {
                     }
                 }
 
-                private Deferred<List<CoreVariant>> processAllRows() {
+                private Deferred<VariantBatch> processAllRows() {
                     return asyncScanner.nextRows().addBothDeferring(new AsyncProcessRows());
                 }
             }
 
-            // async calls
-            for (int i = 0; i < query.getRegions(); ++i) {
-                final AsyncKuduScanner asyncScanner = getAsyncScannerVariantTableByRegion(asyncClient, variantTable, columns, query, i);
+            // async calls, a slice per contig and up to maxStarts positions
+            int from = 0;
+            while (from < sorted.size()) {
+                String contig = sorted.get(from).getC();
+                List<Integer> starts = new ArrayList<>();
+                int to = from;
+                while (to < sorted.size() && sorted.get(to).getC().equals(contig)) {
+                    int s = sorted.get(to).getS();
+                    if (starts.isEmpty() || starts.get(starts.size() - 1) != s) {
+                        if (starts.size() == maxStarts) break;
+                        starts.add(s);
+                    }
+                    ++to;
+                }
+                final AsyncKuduScanner asyncScanner = getAsyncScannerVariantTableByStarts(asyncClient, variantTable, columns, contig, starts);
                 variantScanners.add(asyncScanner); // to close them later
-                final AsyncVariantsByRegion coreVarWithStats = new AsyncVariantsByRegion(asyncScanner);
-                deferredVariantsWithCohortWideStats.add(coreVarWithStats.processAllRows());
+                deferredStats.add(new AsyncVariantsByStarts(asyncScanner).processAllRows());
+                slices.add(from);
+                from = to;
             }
-
-            // sync deferred
-            for (int i = 0; i < query.getRegions(); ++i) {
-                coreVariants.addAll(deferredVariantsWithCohortWideStats.get(i).join());
+            slices.add(sorted.size());
+
+            // sync deferred, merge join
+            for (int i = 0; i < deferredStats.size(); ++i) {
+                VariantBatch stats = deferredStats.get(i).join();
+                stats.sort();
+                int j = 0;
+                for (int k = slices.get(i); k < slices.get(i + 1); ++k) {
+                    CoreVariant cv = sorted.get(k);
+                    while (j < stats.size() && compare(stats, j, cv) < 0) ++j;
+                    if (j == stats.size() || compare(stats, j, cv) != 0)
+                        throw new RuntimeException("No row in Variant table for: " + cv.getC() + " " + cv.getS().toString() + " " + cv.getR() + " " + cv.getA());
+                    cv.setAc(stats.getAc(j));
+                    cv.setAf(stats.getAf(j));
+                    cv.setHomc(stats.getHomc(j));
+                    cv.setHetc(stats.getHetc(j));
+                }
             }
-
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
             try {
                 for (AsyncKuduScanner s : variantScanners) s.close();
-                asyncClient.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+    }
 
-        return coreVariants;
+    /*
+     * Row j of a batch vs a variant of the same contig.
+     */
+    private static int compare(VariantBatch batch, int j, CoreVariant cv) {
+        int cmp = Integer.compare(batch.getStart(j), cv.getS());
+        if (cmp == 0) cmp = batch.getRef(j).compareTo(cv.getR());
+        if (cmp == 0) cmp = batch.getAlt(j).compareTo(cv.getA());
+        return cmp;
     }
 
-    private static Map<Integer, List<Variant>> asyncVariantsBySample(CoreQuery query, List<Integer> sampleIds) {
-        AsyncKuduClient asyncClient = new AsyncKuduClient.AsyncKuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
+    static Map<Integer, List<Variant>> asyncVariantsBySample(KuduClientManager kudu, CoreQuery query, List<Integer> sampleIds) {
+        AsyncKuduClient asyncClient = kudu.getAsyncClient();
         String tableName = getTableName(query.getDatasetId(), query.getReference(), "_gt");
-        KuduTable gtTable = addCallBackToTable(asyncClient, tableName);
+        KuduTableHandle gtTable = getTable(kudu, tableName);
 
         int region = 0;
         List<String> columns = Arrays.asList("contig", "start", "ref", "alt", "rsid", "vtype", "gt"); // projection
         Map<Integer, List<Variant>> variantsBySamples = new HashMap<>(sampleIds.size()); // results
 
-        if (query.getSelectHom() || query.getSelectHet()) {
+        GTScanStrategy strategy = planGTScan(query, sampleIds.size());
+        if ((query.getSelectHom() || query.getSelectHet()) && strategy != GTScanStrategy.PER_SAMPLE) {
+            return asyncVariantsByRegion(asyncClient, gtTable, query, sampleIds, strategy);
+        } else if (query.getSelectHom() || query.getSelectHet()) {
             try {
                 while (region < query.getRegions()) {
 
@@ -259,11 +274,11 @@ public class AsyncKuduCalls {
                                     for (RowResult row : results) {
                                         VariantType t = VariantType.fromByte(row.getByte(5));
                                         String type = (t == null) ? null : t.toString();
-                                        CoreVariant cv = new CoreVariant(row.getString(0), row.getInt(1),
+                                        CoreVariant cv = new CoreVariant(StringPool.contig(row.getString(0)), row.getInt(1),
                                                 (row.getInt(4) == 0) ? null : " rs" + row.getInt(4),
-                                                row.getString(3), row.getString(2), type,
+                                                StringPool.allele(row.getString(3)), StringPool.allele(row.getString(2)), type,
                                                 null, null, null, null, null, null, null, null, null, null, null);
-                                        res.add(new Variant(cv, row.getString(6)));
+                                        res.add(new Variant(cv, gtCode(row.getString(6))));
                                     }
                                     if (asyncScanner.hasMoreRows()) {
                                         return asyncScanner.nextRows().addBothDeferring(this);
@@ -283,7 +298,8 @@ public class AsyncKuduCalls {
 
                     // async calls
                     for (Integer sid : sampleIds) {
-                        final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, region, sid);
+                        final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, region,
+                                newComparisonPredicate(gtTable.getSampleId(), KuduPredicate.ComparisonOp.EQUAL, sid), query.getLimit());
                         sampleScanners.add(asyncScanner); // to close them later
                         final AsyncVariantsBySample allVars = new AsyncVariantsBySample(asyncScanner);
                         deferredVariantsBySamples.put(sid, allVars.processAllRows());
@@ -310,12 +326,6 @@ public class AsyncKuduCalls {
             } catch (Exception e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
-            } finally {
-                try {
-                    asyncClient.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
             }
         }
 
@@ -323,179 +333,319 @@ public class AsyncKuduCalls {
     }
 
     /*
-       Achtung: too many async queries - one per variant.
+     * Scanner per sample pays off only for a small cohort over wide regions, where
+     * it spreads the work over more tablet server threads. Otherwise, a scanner per
+     * region is used, without sample predicate if a cohort is too large for IN list.
      */
-    private static void updateVariantsWithCohortWideStats(DatasetID datasetID, List<CoreVariant> coreVariants) {
-        AsyncKuduClient asyncClient = new AsyncKuduClient.AsyncKuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
-        KuduTable variantTable = addCallBackToTable(asyncClient, datasetID + "_variants");
-        List<AsyncKuduScanner> variantScanners = new LinkedList<>(); // to close them later
-        List<Deferred<CoreVariant>> deferredVariantsWithCohortWideStats = new ArrayList<>(coreVariants.size());
-        List<String> columns = Arrays.asList("ac", "af", "homc", "hetc"); // projection
+    private static GTScanStrategy planGTScan(CoreQuery query, int samples) {
+        Properties p = ReadConfig.getProp();
+        int perSampleMaxSamples = Integer.parseInt(p.getProperty("gtPerSampleMaxSamples", "8"));
+        long perSampleMinRegionBp = Long.parseLong(p.getProperty("gtPerSampleMinRegionBp", "1000000"));
+        int inListMaxSamples = Integer.parseInt(p.getProperty("gtInListMaxSamples", "1000"));
+
+        long width = 0; // total width of regions, bp
+        if (query.getPositionStart() == null || query.getPositionEnd() == null) {
+            width = Long.MAX_VALUE;
+        } else {
+            for (int i = 0; i < query.getRegions(); ++i)
+                width += query.getPositionEnd()[i] - query.getPositionStart()[i] + 1;
+        }
+
+        if (samples <= perSampleMaxSamples && width >= perSampleMinRegionBp)
+            return GTScanStrategy.PER_SAMPLE;
+        if (samples <= inListMaxSamples)
+            return GTScanStrategy.IN_LIST;
+        return GTScanStrategy.REGION;
+    }
+
+    private static Map<Integer, List<Variant>> asyncVariantsByRegion(AsyncKuduClient asyncClient, KuduTableHandle gtTable, CoreQuery query,
+                                                                     List<Integer> sampleIds, GTScanStrategy strategy) {
+        List<String> columns = Arrays.asList("contig", "start", "ref", "alt", "rsid", "vtype", "gt", "sample_id"); // projection
+        final Set<Integer> cohort = new HashSet<>(sampleIds);
+        KuduPredicate samplePredicate = (strategy == GTScanStrategy.IN_LIST) ?
+                KuduPredicate.newInListPredicate(gtTable.getSampleId(), sampleIds) : null;
+        List<AsyncKuduScanner> regionScanners = new LinkedList<>(); // to close them later
+        List<Deferred<Map<Integer, List<Variant>>>> deferredVariantsByRegions = new ArrayList<>(query.getRegions());
+        Map<Integer, List<Variant>> variantsBySamples = new HashMap<>(sampleIds.size()); // results
 
         try {
-            final class AsyncVariantsByVariants {
+            final class AsyncVariantsByRegion {
                 final private AsyncKuduScanner asyncScanner;
 
-                private AsyncVariantsByVariants(AsyncKuduScanner asyncScanner) {
+                private AsyncVariantsByRegion(AsyncKuduScanner asyncScanner) {
                     this.asyncScanner = asyncScanner;
                 }
 
-                final class AsyncProcessRows implements Callback<Deferred<CoreVariant>, RowResultIterator> {
-                    private CoreVariant res;
+                final class AsyncProcessRows implements Callback<Deferred<Map<Integer, List<Variant>>>, RowResultIterator> {
+                    private final Map<Integer, List<Variant>> res = new HashMap<>();
+
                     @Override
-                    public Deferred<CoreVariant> call(RowResultIterator results) {
-                        if (results != null && results.hasNext()) {
-                            RowResult row = results.next();
-                            res = new CoreVariant(null, null, null, null, null, null,
-                                    row.getFloat(0), row.getFloat(1), row.getInt(2), row.getInt(3),
-                                    null, null, null, null, null, null, null);
-                        } else {
-                            res = new CoreVariant(null, null, null, null, null, null, null, null, null, null,
-                                    null, null, null, null, null, null, null);
+                    public Deferred<Map<Integer, List<Variant>>> call(RowResultIterator results) {
+                        if (results != null) {
+                            for (RowResult row : results) {
+                                Integer sid = row.getInt(7);
+                                if (!cohort.contains(sid)) continue;
+                                VariantType t = VariantType.fromByte(row.getByte(5));
+                                String type = (t == null) ? null : t.toString();
+                                CoreVariant cv = new CoreVariant(StringPool.contig(row.getString(0)), row.getInt(1),
+                                        (row.getInt(4) == 0) ? null : " rs" + row.getInt(4),
+                                        StringPool.allele(row.getString(3)), StringPool.allele(row.getString(2)), type,
+                                        null, null, null, null, null, null, null, null, null, null, null);
+                                List<Variant> variantsInSample = res.get(sid);
+                                if (variantsInSample == null) {
+                                    variantsInSample = new LinkedList<>();
+                                    res.put(sid, variantsInSample);
+                                }
+                                variantsInSample.add(new Variant(cv, gtCode(row.getString(6))));
+                            }
+                            if (asyncScanner.hasMoreRows()) {
+                                return asyncScanner.nextRows().addBothDeferring(this);
+                            }
                         }
                         return Deferred.fromResult(res);
                     }
                 }
 
-                private Deferred<CoreVariant> processAllRows() {
+                private Deferred<Map<Integer, List<Variant>>> processAllRows() {
                     return asyncScanner.nextRows().addBothDeferring(new AsyncProcessRows());
                 }
             }
 
             // async calls
-            for (int i=0; i < coreVariants.size(); ++i) {
-                CoreVariant cv = coreVariants.get(i);
-                final AsyncKuduScanner asyncScanner = getAsyncScannerVariantTableByVariant(asyncClient, variantTable, columns, cv, 1);
-                variantScanners.add(asyncScanner); // to close them later
-                final AsyncVariantsByVariants coreVarWithStats = new AsyncVariantsByVariants(asyncScanner);
-                deferredVariantsWithCohortWideStats.add(coreVarWithStats.processAllRows());
+            for (int i = 0; i < query.getRegions(); ++i) {
+                final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, i, samplePredicate, null);
+                regionScanners.add(asyncScanner); // to close them later
+                deferredVariantsByRegions.add(new AsyncVariantsByRegion(asyncScanner).processAllRows());
             }
 
             // sync deferred
-            for (int i=0; i < coreVariants.size(); ++i) {
-                CoreVariant cvStat = deferredVariantsWithCohortWideStats.get(i).join();
-                CoreVariant cv = coreVariants.get(i);
-                cv.setAc(cvStat.getAc());
-                cv.setAf(cvStat.getAf());
-                cv.setHomc(cvStat.getHomc());
-                cv.setHetc(cvStat.getHetc());
+            for (Deferred<Map<Integer, List<Variant>>> d : deferredVariantsByRegions) {
+                for (Map.Entry<Integer, List<Variant>> e : d.join().entrySet()) {
+                    List<Variant> variantsInSample = variantsBySamples.get(e.getKey());
+                    if (variantsInSample == null)
+                        variantsBySamples.put(e.getKey(), e.getValue());
+                    else
+                        variantsInSample.addAll(e.getValue());
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
             try {
-                for (AsyncKuduScanner s: variantScanners) s.close();
-                asyncClient.close();
+                for (AsyncKuduScanner s : regionScanners) s.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-    }
 
-    public static AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variantsInVirtualCohort(CoreQuery query, HashSet<String> samples) {
-        Long start = System.nanoTime();
-        // calls to Kudu
-        String tableName = getTableName(query.getDatasetId(), query.getReference(), "_samples");
-        List<Integer> sampleIds = getSampleIDsByNames(tableName, samples);
-        Map<Integer, List<Variant>> variantsBySamples = asyncVariantsBySample(query, sampleIds);
+        return variantsBySamples;
+    }
 
-        // Select unique variants
-        boolean intersection = query.getConj();
-        Map<CoreVariant, Counters> uniqueVariants = new HashMap<>(); // all unique variants in samples
+    /*
+     * Unique variants of a virtual cohort with virtual cohort stats, at most lim (null for unlim),
+     * in order of first appearance. For intersection (conj) only variants present in all samples.
+     */
+    static List<CoreVariant> aggregate(Map<Integer, List<Variant>> variantsBySamples, boolean intersection,
+                                       int cohortSize, Integer lim) {
+        int rows = 0;
+        for (List<Variant> sv : variantsBySamples.values()) rows += sv.size();
+        VariantCounts uniqueVariants = new VariantCounts(Math.min(rows, 1 << 20)); // all unique variants in samples
 
         for (List<Variant> sv : variantsBySamples.values()) { // all samples
             for (Variant v : sv) { // all variants in a sample
-                if (v.gt == null) throw new RuntimeException("Inconsistency: Null GT in variant in sample");
-                Counters c = (uniqueVariants.containsKey(v.cv)) ? uniqueVariants.get(v.cv) : new Counters();
-                c.sc += 1;
-                if (v.gt.equals("1/1") || v.gt.equals("1|1")) c.homc += 1;
-                uniqueVariants.put(v.cv, c);
+                if (v.gt == GT_MISSING) throw new RuntimeException("Inconsistency: Null GT in variant in sample");
+                uniqueVariants.add(v.cv, v.gt == GT_HOM_ALT);
             }
         }
 
         // autosomal virtual cohort stats
-        int i = 0; // final results variant counter
-        boolean unlim = query.getLimit() == null; // null equals unlim
-        int lim = (unlim) ? 0 : query.getLimit();
-        List<CoreVariant> coreVariants = new ArrayList<>(uniqueVariants.size()); // final list of variants
-
-        for (Map.Entry<CoreVariant, Counters> entry: uniqueVariants.entrySet()) {
-            if (!unlim && i >= lim) break;
-            CoreVariant cv = entry.getKey();
-            Counters c = entry.getValue();
-            if (intersection && (c.sc != samples.size())) continue; // for intersection - include only those present in all samples
-            cv.setVhomc(c.homc);
-            cv.setVhetc(c.sc - c.homc);
-            cv.setVac(2f*c.homc + c.sc - c.homc);
-            cv.setVaf(cv.getVac()/(float)(2*samples.size()));
+        List<CoreVariant> coreVariants = new ArrayList<>(uniqueVariants.size());
+        for (int e = 0; e < uniqueVariants.size(); ++e) {
+            if (lim != null && coreVariants.size() >= lim) break;
+            CoreVariant cv = uniqueVariants.getVariant(e);
+            int sc = uniqueVariants.getSampleCount(e);
+            int homc = uniqueVariants.getHomCount(e);
+            if (intersection && (sc != cohortSize)) continue; // for intersection - include only those present in all samples
+            cv.setVhomc(homc);
+            cv.setVhetc(sc - homc);
+            cv.setVac(2f*homc + sc - homc);
+            cv.setVaf(cv.getVac()/(float)(2*cohortSize));
             coreVariants.add(cv);
-            ++i;
         }
+        return coreVariants;
+    }
 
-        // update variants with cohort wide stats
-        List<CoreVariant> varsWithStatInRegions = asyncVariants(query);
-        Collections.sort(varsWithStatInRegions);
-
-        for (CoreVariant cv: coreVariants) {
-            int ind = Collections.binarySearch(varsWithStatInRegions, cv);
-            if (ind < 0)
-                throw new RuntimeException("No row in Variant table for: " + cv.getC() + " " + cv.getS().toString() + " " + cv.getR() + " " + cv.getA());
-            CoreVariant cvStat = varsWithStatInRegions.get(ind);
-            cv.setAc(cvStat.getAc());
-            cv.setAf(cvStat.getAf());
-            cv.setHomc(cvStat.getHomc());
-            cv.setHetc(cvStat.getHetc());
+    /*
+     * Single region (or its window) of a query, without limit and paging.
+     */
+    private static CoreQuery windowQuery(CoreQuery q, int region, Integer from, Integer to) {
+        Chromosome[] chr = (q.getChromosome() == null) ? null : new Chromosome[]{q.getChromosome()[region]};
+        int[] ps = (from != null) ? new int[]{from} : (q.getPositionStart() == null) ? null : new int[]{q.getPositionStart()[region]};
+        int[] pe = (to != null) ? new int[]{to} : (q.getPositionEnd() == null) ? null : new int[]{q.getPositionEnd()[region]};
+        CoreQuery wq = new CoreQuery(chr, ps, pe, q.getRefAllele(), q.getAltAllele(), q.getSelectHom(), q.getSelectHet(),
+                q.getDatasetId(), q.getDbSNP(), q.getType(), q.getReference(), 1, null, null, q.getJwt(), q.getSamples(),
+                q.getConj(), q.getSelectSamplesByGT(), q.getReturnAnnotations(), q.getPheno(), q.getGenelist(),
+                q.getHwe(), q.getChi2(), null);
+        wq.setRsIds(q.getRsIds());
+        return wq;
+    }
+
+    /*
+     * Ordered mode for limited queries. Regions are read in query order, a region with both bounds
+     * in windows of cohortWindowBp. Genotypes of a window are aggregated once all samples have been
+     * read, so its variants are final, and they are taken in genomic order. Scanning stops as soon
+     * as skip + limit variants are confirmed: a page costs the windows up to its last variant, and
+     * the same query returns the same page.
+     */
+    private static List<CoreVariant> orderedVariantsInVirtualCohort(KuduClientManager kudu, CoreQuery query,
+                                                                    List<Integer> sampleIds, int cohortSize) {
+        int windowBp = Math.max(1, Integer.parseInt(ReadConfig.getProp().getProperty("cohortWindowBp", "100000")));
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        int want = skip + query.getLimit();
+        boolean bounded = query.getPositionStart() != null && query.getPositionEnd() != null;
+        List<CoreVariant> coreVariants = new ArrayList<>();
+        int confirmed = 0;
+
+        for (int region = 0; region < query.getRegions() && confirmed < want; ++region) {
+            long from = (bounded) ? query.getPositionStart()[region] : 0;
+            long end = (bounded) ? query.getPositionEnd()[region] : 0;
+            do {
+                long to = Math.min(end, from + windowBp - 1);
+                CoreQuery window = (bounded) ? windowQuery(query, region, (int) from, (int) to) : windowQuery(query, region, null, null);
+                List<CoreVariant> inWindow = aggregate(asyncVariantsBySample(kudu, window, sampleIds), query.getConj(), cohortSize, null);
+                Collections.sort(inWindow);
+                for (CoreVariant cv : inWindow) {
+                    if (confirmed == want) break;
+                    if (confirmed++ >= skip) coreVariants.add(cv);
+                }
+                from = to + 1;
+            } while (bounded && from <= end && confirmed < want);
+        }
+        return coreVariants;
+    }
+
+    static AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variantsInVirtualCohort(KuduClientManager kudu, CoreQuery query, Set<String> samples) {
+        Long start = System.nanoTime();
+        // calls to Kudu
+        String tableName = getTableName(query.getDatasetId(), query.getReference(), "_samples");
+        List<Integer> sampleIds = getSamples(kudu, tableName).resolve(samples);
+
+        List<CoreVariant> coreVariants; // final list of variants
+        boolean ordered = ReadConfig.getProp().getProperty("cohortScanMode", "ordered").equalsIgnoreCase("ordered");
+        if (ordered && query.getLimit() != null) {
+            coreVariants = orderedVariantsInVirtualCohort(kudu, query, sampleIds, samples.size());
+        } else {
+            Map<Integer, List<Variant>> variantsBySamples = asyncVariantsBySample(kudu, query, sampleIds);
+            coreVariants = aggregate(variantsBySamples, query.getConj(), samples.size(), query.getLimit());
         }
 
+        // update variants with cohort wide stats
+        updateWithCohortWideStats(kudu, query, coreVariants);
+
         Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
         return new AbstractMap.SimpleImmutableEntry(elapsedDbMs, coreVariants);
     }
 
-    private static Map<Integer, String> getAllSamples(String tableName) {
-        Map<Integer, String> allSamples = new HashMap<>();
-        final KuduClient client = new KuduClient.KuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
+    /*
+     * Sample selection with one sample_id projection scan per region: samples with
+     * a variant in a region set their bit, regions are OR-ed.
+     */
+    private static BitSet samplesBitmap(AsyncKuduClient asyncClient, KuduTableHandle gtTable, CoreQuery query) {
+        List<String> columns = Collections.singletonList("sample_id"); // projection
+        List<AsyncKuduScanner> regionScanners = new LinkedList<>(); // to close them later
+        List<Deferred<BitSet>> deferredBitmaps = new ArrayList<>(query.getRegions());
+        BitSet bySamples = new BitSet(); // results
+
         try {
-            KuduTable table = client.openTable(tableName);
-            KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table);
-            ksb.setProjectedColumnNames(Arrays.asList("sample_id", "sample_name"));
-            KuduScanner scanner = ksb.build();
-
-            while (scanner.hasMoreRows()) {
-                RowResultIterator results = scanner.nextRows();
-                while (results != null && results.hasNext()) {
-                    RowResult result = results.next();
-                    allSamples.put(result.getInt(0), result.getString(1));
+            final class AsyncSamplesByRegion {
+                final private AsyncKuduScanner asyncScanner;
+
+                private AsyncSamplesByRegion(AsyncKuduScanner asyncScanner) {
+                    this.asyncScanner = asyncScanner;
+                }
+
+                final class AsyncProcessRows implements Callback<Deferred<BitSet>, RowResultIterator> {
+                    private final BitSet res = new BitSet();
+
+                    @Override
+                    public Deferred<BitSet> call(RowResultIterator results) {
+                        if (results != null) {
+                            for (RowResult row : results) {
+                                int sid = row.getInt(0);
+                                if (sid < 0) throw new RuntimeException("Inconsistency: negative sample id " + sid);
+                                res.set(sid);
+                            }
+                            if (asyncScanner.hasMoreRows()) {
+                                return asyncScanner.nextRows().addBothDeferring(this);
+                            }
+                        }
+                        return Deferred.fromResult(res);
+                    }
+                }
+
+                private Deferred<BitSet> processAllRows() {
+                    return asyncScanner.nextRows().addBothDeferring(new AsyncProcessRows());
                 }
             }
-            scanner.close();
+
+            // async calls
+            for (int i = 0; i < query.getRegions(); ++i) {
+                final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, i, null, null);
+                regionScanners.add(asyncScanner); // to close them later
+                deferredBitmaps.add(new AsyncSamplesByRegion(asyncScanner).processAllRows());
+            }
+
+            // sync deferred
+            for (Deferred<BitSet> d : deferredBitmaps) {
+                bySamples.or(d.join());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
             try {
-                client.close();
+                for (AsyncKuduScanner s : regionScanners) s.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-        return allSamples;
+
+        return bySamples;
     }
 
-    public static AbstractMap.SimpleImmutableEntry<Long,List<String>> selectSamplesByGT(CoreQuery query) {
+    static AbstractMap.SimpleImmutableEntry<Long,List<String>> selectSamplesByGT(KuduClientManager kudu, CoreQuery query) {
+        Long start = System.nanoTime();
+
+        if (ReadConfig.getProp().getProperty("selectSamplesByGTMode", "bitmap").equalsIgnoreCase("bitmap")) {
+            List<String> selectedSamplesNames = new LinkedList<>();
+            if (query.getSelectHom() || query.getSelectHet()) {
+                KuduTableHandle gtTable = getTable(kudu, getTableName(query.getDatasetId(), query.getReference(), "_gt"));
+                BitSet bySamples = samplesBitmap(kudu.getAsyncClient(), gtTable, query);
+                SampleRegistry allSamples = getSamples(kudu, getTableName(query.getDatasetId(), query.getReference(), "_samples"));
+                for (int sid = bySamples.nextSetBit(0); sid >= 0; sid = bySamples.nextSetBit(sid + 1)) {
+                    String name = allSamples.getName(sid);
+                    if (name != null)
+                        selectedSamplesNames.add(name);
+                }
+            }
+            Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+            return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, selectedSamplesNames);
+        }
+
+        // "probe" mode
         // detects variant existence in a region for all sample IDs
         // saved as a boolean flag per sample
         // implementation similar to asyncVariantsBySample(), but doesn't keep variants - only flags
 
-        Long start = System.nanoTime();
         String tableName = getTableName(query.getDatasetId(), query.getReference(), "_samples");
-        Map<Integer, String> allSamples = getAllSamples(tableName);
-        AsyncKuduClient asyncClient = new AsyncKuduClient.AsyncKuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
+        SampleRegistry allSamples = getSamples(kudu, tableName);
+        AsyncKuduClient asyncClient = kudu.getAsyncClient();
         String gtTableName = getTableName(query.getDatasetId(), query.getReference(), "_gt");
-        KuduTable gtTable = addCallBackToTable(asyncClient, gtTableName);
+        KuduTableHandle gtTable = getTable(kudu, gtTableName);
 
         int region = 0;
-        Set<Integer> allSampleIds = allSamples.keySet();
+        List<Integer> allSampleIds = allSamples.getIds();
         List<String> columns = Arrays.asList("sample_id");
         Map<Integer, Boolean> bySamples = new HashMap<>(allSampleIds.size()); // results
 
@@ -535,7 +685,8 @@ public class AsyncKuduCalls {
 
                     // async calls
                     for (Integer sid : allSampleIds) {
-                        final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, region, sid);
+                        final AsyncKuduScanner asyncScanner = getAsyncScannerGT(asyncClient, gtTable, columns, query, region,
+                                newComparisonPredicate(gtTable.getSampleId(), KuduPredicate.ComparisonOp.EQUAL, sid), query.getLimit());
                         sampleScanners.add(asyncScanner); // to close them later
                         final AsyncVariantsExistBySample allVars = new AsyncVariantsExistBySample(asyncScanner);
                         deferredBySamples.put(sid, allVars.processAllRows());
@@ -558,12 +709,6 @@ public class AsyncKuduCalls {
             } catch (Exception e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
-            } finally {
-                try {
-                    asyncClient.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
             }
         }
 
@@ -572,24 +717,18 @@ public class AsyncKuduCalls {
         List<String> selectedSamplesNames = new LinkedList<>();
         for (Integer sid : allSampleIds) {
             if (bySamples.get(sid) != null && bySamples.get(sid))
-                selectedSamplesNames.add(allSamples.get(sid));
+                selectedSamplesNames.add(allSamples.getName(sid));
         }
 
         return new AbstractMap.SimpleImmutableEntry(elapsedDbMs, selectedSamplesNames);
     }
 
-    private static KuduTable addCallBackToTable(AsyncKuduClient asyncClient, String tbl) {
+    private static KuduTableHandle getTable(KuduClientManager kudu, String tbl) {
         try {
-            final class getTable implements Callback<KuduTable, KuduTable> {
-                @Override
-                public KuduTable call(KuduTable table) {
-                    return table;
-                }
-            }
-            return asyncClient.openTable(tbl).addCallback(new getTable()).join();
+            return kudu.getTable(tbl);
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+}
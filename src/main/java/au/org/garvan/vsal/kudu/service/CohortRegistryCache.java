@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.core.entity.Cohort;
+import org.apache.kudu.client.KuduException;
+
+import java.util.Map;
+
+/**
+ * Registered cohorts by id, as stored in the <code>vsal_cohorts</code> tables.
+ * <p>
+ * The registry is loaded on first use and replaced as a whole on refresh, which runs along with
+ * periodic cohort rebuilds. Changes made through this instance are applied in place, changes made
+ * by other instances are seen after a refresh. Cohort queries don't touch the registry tables.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CohortRegistryCache {
+
+    private final KuduClientManager kudu;
+    private volatile Map<String, Cohort> cohorts; // null until loaded
+
+    public CohortRegistryCache(KuduClientManager kudu) {
+        this.kudu = kudu;
+    }
+
+    private Map<String, Cohort> cohorts() throws KuduException {
+        Map<String, Cohort> c = cohorts;
+        return (c != null) ? c : refresh();
+    }
+
+    /**
+     * @return registered cohort or null
+     */
+    public Cohort get(String id) throws KuduException {
+        return cohorts().get(id);
+    }
+
+    public synchronized Map<String, Cohort> refresh() throws KuduException {
+        cohorts = CohortTables.load(kudu);
+        return cohorts;
+    }
+
+    synchronized void put(Cohort c) throws KuduException {
+        cohorts().put(c.getId(), c);
+    }
+
+    synchronized void remove(String id) throws KuduException {
+        cohorts().remove(id);
+    }
+
+    public void clear() {
+        cohorts = null;
+    }
+}
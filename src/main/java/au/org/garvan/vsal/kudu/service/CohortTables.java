@@ -0,0 +1,517 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.beacon.entity.Chromosome;
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantType;
+import au.org.garvan.vsal.core.service.CoreService;
+import au.org.garvan.vsal.core.util.CoreQueryUtils;
+import au.org.garvan.vsal.core.util.ReadConfig;
+import au.org.garvan.vsal.core.util.StringPool;
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static au.org.garvan.vsal.kudu.service.KuduCalls.getTableName;
+import static org.apache.kudu.client.KuduPredicate.newComparisonPredicate;
+
+/**
+ * Materialised cohorts: per-variant genotype counts of registered sample groups.
+ * <p>
+ * Cohorts are registered in the <code>vsal_cohorts</code> table, their samples in <code>vsal_cohort_samples</code>
+ * (a row per sample), both are kept in memory by {@link CohortRegistryCache}. Counts of a cohort are kept in
+ * <code>&lt;dataset&gt;_cohort_&lt;name&gt;_&lt;build time&gt;</code> along with cohort-wide stats of each
+ * variant, so a cohort query is a single scan per region. A table is built from the <code>_gt</code>
+ * table contig by contig, in windows, with the same aggregation as ad-hoc cohorts. A rebuild
+ * writes a new table and switches the registry to it once complete, so queries aren't interrupted.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CohortTables {
+
+    public static final String REGISTRY = "vsal_cohorts";
+    public static final String SAMPLES = "vsal_cohort_samples";
+
+    private static final int MAX_CONTIG_BP = 250000000; // longer than chr1, for assemblies without lengths below
+
+    // contig lengths (bp) of 1 .. 22, X, Y, MT
+    private static final int[] HG19_BP = {
+            249250621, 243199373, 198022430, 191154276, 180915260, 171115067, 159138663, 146364022, 141213431,
+            135534747, 135006516, 133851895, 115169878, 107349540, 102531392, 90354753, 81195210, 78077248,
+            59128983, 63025520, 48129895, 51304566, 155270560, 59373566, 16569};
+    private static final int[] HG38_BP = {
+            248956422, 242193529, 198295559, 190214555, 181538259, 170805979, 159345973, 145138636, 138394717,
+            133797422, 135086622, 133275309, 114364328, 107043718, 101991189, 90338345, 83257441, 80373285,
+            58617616, 64444167, 46709983, 50818468, 156040895, 57227415, 16569};
+    private static final List<String> REGISTRY_COLUMNS =
+            Arrays.asList("cohort", "dataset", "asm", "name", "size", "status", "physical", "updated");
+    private static final List<String> COHORT_COLUMNS =
+            Arrays.asList("contig", "start", "ref", "alt", "rsid", "vtype", "ac", "af", "homc", "hetc", "vhomc", "vhetc");
+
+    static String cohortId(DatasetID dataset, Reference ref, String name) {
+        return getTableName(dataset, ref, "_cohort_" + name.toLowerCase());
+    }
+
+    private static Schema registrySchema() {
+        return new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("cohort", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("dataset", Type.STRING).build(),
+                new ColumnSchema.ColumnSchemaBuilder("asm", Type.STRING).build(),
+                new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).build(),
+                new ColumnSchema.ColumnSchemaBuilder("size", Type.INT32).build(),
+                new ColumnSchema.ColumnSchemaBuilder("status", Type.STRING).build(),
+                new ColumnSchema.ColumnSchemaBuilder("physical", Type.STRING).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("updated", Type.INT64).build()));
+    }
+
+    private static Schema samplesSchema() {
+        return new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("cohort", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("sample", Type.STRING).key(true).build()));
+    }
+
+    private static Schema cohortSchema() {
+        return new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("contig", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("start", Type.INT32).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("ref", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("alt", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("rsid", Type.INT32).build(),
+                new ColumnSchema.ColumnSchemaBuilder("vtype", Type.INT8).build(),
+                new ColumnSchema.ColumnSchemaBuilder("ac", Type.FLOAT).build(),
+                new ColumnSchema.ColumnSchemaBuilder("af", Type.FLOAT).build(),
+                new ColumnSchema.ColumnSchemaBuilder("homc", Type.INT32).build(),
+                new ColumnSchema.ColumnSchemaBuilder("hetc", Type.INT32).build(),
+                new ColumnSchema.ColumnSchemaBuilder("vhomc", Type.INT32).build(),
+                new ColumnSchema.ColumnSchemaBuilder("vhetc", Type.INT32).build()));
+    }
+
+    /*
+     * Registry or samples table, created on first write.
+     */
+    private static KuduTableHandle table(KuduClientManager kudu, String name, Schema schema) throws KuduException {
+        KuduTableHandle table = existing(kudu, name);
+        if (table != null) return table;
+        try {
+            kudu.getClient().createTable(name, schema,
+                    new CreateTableOptions().addHashPartitions(Collections.singletonList("cohort"), 2));
+        } catch (KuduException e) {
+            if (!e.getStatus().isAlreadyPresent()) throw e;
+        }
+        return kudu.getTable(name);
+    }
+
+    /*
+     * null if there is no such table
+     */
+    private static KuduTableHandle existing(KuduClientManager kudu, String name) throws KuduException {
+        try {
+            return kudu.getTable(name);
+        } catch (KuduException e) {
+            if (e.getStatus().isNotFound()) return null;
+            throw e;
+        }
+    }
+
+    private static void deleteTable(KuduClientManager kudu, String name) throws KuduException {
+        try {
+            kudu.getClient().deleteTable(name);
+        } catch (KuduException e) {
+            if (!e.getStatus().isNotFound()) throw e;
+        }
+        kudu.invalidateTable(name);
+    }
+
+    private static Cohort toCohort(RowResult r, List<String> samples) {
+        if (samples != null) Collections.sort(samples); // sample rows come in no particular order
+        return new Cohort(r.getString(0), DatasetID.fromString(r.getString(1)), CoreQueryUtils.normalizeReference(r.getString(2)),
+                r.getString(3), (samples == null) ? Collections.<String>emptyList() : samples,
+                r.getString(5), r.isNull(6) ? null : r.getString(6), r.getLong(7));
+    }
+
+    private static void apply(KuduClient client, List<Operation> ops, String what) throws KuduException {
+        if (ops.isEmpty()) return;
+        KuduSession session = client.newSession();
+        session.setFlushMode(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND);
+        try {
+            for (Operation op : ops) session.apply(op);
+            session.flush();
+        } finally {
+            session.close();
+        }
+        RowErrorsAndOverflowStatus errors = session.getPendingErrors();
+        if (errors.getRowErrors().length > 0)
+            throw new RuntimeException("Can't update " + what + ": " + errors.getRowErrors()[0]);
+    }
+
+    private static void write(KuduClientManager kudu, Cohort c) throws KuduException {
+        KuduTable table = table(kudu, REGISTRY, registrySchema()).getTable();
+        Upsert upsert = table.newUpsert();
+        PartialRow row = upsert.getRow();
+        row.addString("cohort", c.getId());
+        row.addString("dataset", c.getDataset().toString());
+        row.addString("asm", c.getRef().toString());
+        row.addString("name", c.getName());
+        row.addInt("size", c.getSize());
+        row.addString("status", c.getStatus());
+        if (c.getPhysical() == null) row.setNull("physical");
+        else row.addString("physical", c.getPhysical());
+        row.addLong("updated", c.getUpdated());
+        apply(kudu.getClient(), Collections.<Operation>singletonList(upsert), "cohort " + c.getId());
+        kudu.getCohorts().put(c);
+    }
+
+    /*
+     * Names of samples by cohort, of a single cohort if id isn't null.
+     */
+    private static Map<String, List<String>> samples(KuduClientManager kudu, String id) throws KuduException {
+        Map<String, List<String>> samples = new HashMap<>();
+        KuduTableHandle table = existing(kudu, SAMPLES);
+        if (table == null) return samples;
+        KuduScanner.KuduScannerBuilder ksb = kudu.getClient().newScannerBuilder(table.getTable())
+                .setProjectedColumnNames(Arrays.asList("cohort", "sample"));
+        if (id != null)
+            ksb.addPredicate(newComparisonPredicate(table.getTable().getSchema().getColumn("cohort"), KuduPredicate.ComparisonOp.EQUAL, id));
+        KuduScanner scanner = ksb.build();
+        try {
+            while (scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                while (results != null && results.hasNext()) {
+                    RowResult r = results.next();
+                    samples.computeIfAbsent(r.getString(0), k -> new ArrayList<>()).add(r.getString(1));
+                }
+            }
+        } finally {
+            scanner.close();
+        }
+        return samples;
+    }
+
+    /*
+     * Replaces sample rows of a cohort, null samples removes them all.
+     */
+    private static void writeSamples(KuduClientManager kudu, String id, List<String> samples) throws KuduException {
+        List<String> old = samples(kudu, id).get(id);
+        if (old == null && samples == null) return;
+        KuduTable table = table(kudu, SAMPLES, samplesSchema()).getTable();
+        Set<String> keep = (samples == null) ? Collections.<String>emptySet() : new HashSet<>(samples);
+        List<Operation> ops = new ArrayList<>();
+        if (old != null) {
+            for (String sample : old) {
+                if (keep.contains(sample)) continue;
+                Delete delete = table.newDelete();
+                delete.getRow().addString("cohort", id);
+                delete.getRow().addString("sample", sample);
+                ops.add(delete);
+            }
+        }
+        for (String sample : keep) {
+            Upsert upsert = table.newUpsert();
+            upsert.getRow().addString("cohort", id);
+            upsert.getRow().addString("sample", sample);
+            ops.add(upsert);
+        }
+        apply(kudu.getClient(), ops, "samples of cohort " + id);
+    }
+
+    /**
+     * Reads all registered cohorts, see {@link CohortRegistryCache}.
+     */
+    static Map<String, Cohort> load(KuduClientManager kudu) throws KuduException {
+        Map<String, Cohort> cohorts = new ConcurrentHashMap<>();
+        KuduTableHandle table = existing(kudu, REGISTRY);
+        if (table == null) return cohorts;
+        Map<String, List<String>> samples = samples(kudu, null);
+        KuduScanner scanner = kudu.getClient().newScannerBuilder(table.getTable())
+                .setProjectedColumnNames(REGISTRY_COLUMNS).build();
+        try {
+            while (scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                while (results != null && results.hasNext()) {
+                    RowResult r = results.next();
+                    cohorts.put(r.getString(0), toCohort(r, samples.get(r.getString(0))));
+                }
+            }
+        } finally {
+            scanner.close();
+        }
+        return cohorts;
+    }
+
+    /*
+     * Registration time of a cohort as stored, null if it isn't registered.
+     */
+    private static Long updated(KuduClientManager kudu, String id) throws KuduException {
+        KuduTableHandle table = existing(kudu, REGISTRY);
+        if (table == null) return null;
+        KuduScanner scanner = kudu.getClient().newScannerBuilder(table.getTable())
+                .setProjectedColumnNames(Collections.singletonList("updated"))
+                .addPredicate(newComparisonPredicate(table.getTable().getSchema().getColumn("cohort"), KuduPredicate.ComparisonOp.EQUAL, id))
+                .build();
+        try {
+            while (scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                if (results != null && results.hasNext())
+                    return results.next().getLong(0);
+            }
+        } finally {
+            scanner.close();
+        }
+        return null;
+    }
+
+    /**
+     * @return registered cohort or null
+     */
+    static Cohort get(KuduClientManager kudu, String id) throws KuduException {
+        return kudu.getCohorts().get(id);
+    }
+
+    /**
+     * Registers a cohort, or replaces samples of a registered one. Counts are built separately, see {@link #build}.
+     *
+     * @throws RuntimeException if a sample doesn't exist in a dataset
+     */
+    static Cohort register(KuduClientManager kudu, DatasetID dataset, Reference ref, String name,
+                                  List<String> samples) throws KuduException {
+        kudu.getSamples(getTableName(dataset, ref, "_samples")).resolve(samples); // fails on unknown samples
+        String id = cohortId(dataset, ref, name);
+        Cohort old = get(kudu, id);
+        Cohort c = new Cohort(id, dataset, ref, name, new ArrayList<>(new LinkedHashSet<>(samples)), Cohort.STATUS_BUILDING,
+                (old == null) ? null : old.getPhysical(), System.currentTimeMillis());
+        writeSamples(kudu, id, c.getSamples());
+        write(kudu, c);
+        return c;
+    }
+
+    /**
+     * Removes a cohort and its counts.
+     *
+     * @return false if there is no such cohort
+     */
+    static boolean drop(KuduClientManager kudu, String id) throws KuduException {
+        Cohort c = get(kudu, id);
+        if (c == null) return false;
+        Delete delete = table(kudu, REGISTRY, registrySchema()).getTable().newDelete();
+        delete.getRow().addString("cohort", id);
+        apply(kudu.getClient(), Collections.<Operation>singletonList(delete), "cohort " + id);
+        kudu.getCohorts().remove(id);
+        writeSamples(kudu, id, null);
+        if (c.getPhysical() != null)
+            deleteTable(kudu, c.getPhysical());
+        return true;
+    }
+
+    /*
+     * Whole contig window of a cohort, both genotypes.
+     */
+    private static CoreQuery windowQuery(Cohort c, Chromosome chr, int from, int to) {
+        CoreQuery q = new CoreQuery(new Chromosome[]{chr}, new int[]{from}, new int[]{to}, null, null, true, true,
+                c.getDataset(), null, null, c.getRef(), 1, null, null, null, null,
+                false, false, false, false, false, false, false, null);
+        q.setRsIds(Collections.<Integer>emptyList());
+        return q;
+    }
+
+    private static int contigLength(Reference ref, Chromosome chr) {
+        int[] bp = (ref == Reference.HG38) ? HG38_BP : (ref == null || ref == Reference.HG19) ? HG19_BP : null;
+        if (bp == null) return MAX_CONTIG_BP;
+        switch (chr) {
+            case CHRX: return bp[22];
+            case CHRY: return bp[23];
+            case CHRMT: return bp[24];
+            default: return bp[Integer.parseInt(chr.toString()) - 1];
+        }
+    }
+
+    /*
+     * Marks a cohort as failed, unless it has been dropped or re-registered during the build.
+     */
+    private static void failed(KuduClientManager kudu, Cohort c) throws KuduException {
+        Long updated = updated(kudu, c.getId());
+        if (updated == null || updated != c.getUpdated()) return;
+        write(kudu, new Cohort(c.getId(), c.getDataset(), c.getRef(), c.getName(), c.getSamples(), Cohort.STATUS_FAILED,
+                c.getPhysical(), System.currentTimeMillis()));
+    }
+
+    private static int rsid(String rs) {
+        if (rs == null) return 0;
+        try {
+            return Integer.parseInt(rs.trim().substring(2));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Builds counts of a cohort into a new table and switches the registry to it, the previous table is dropped.
+     * A cohort that has been dropped or re-registered meanwhile is left as it is.
+     */
+    static void build(KuduClientManager kudu, Cohort c) throws KuduException {
+        KuduClient client = kudu.getClient();
+        Properties p = ReadConfig.getProp();
+        int windowBp = Math.max(1, Integer.parseInt(p.getProperty("cohortBuildWindowBp", "5000000")));
+        int buckets = Integer.parseInt(p.getProperty("cohortTableBuckets", "4"));
+        long started = System.nanoTime();
+
+        List<Integer> sampleIds = kudu.getSamples(getTableName(c.getDataset(), c.getRef(), "_samples")).resolve(c.getSamples());
+        String physical = c.getId() + "_" + System.currentTimeMillis();
+        client.createTable(physical, cohortSchema(), new CreateTableOptions()
+                .addHashPartitions(Arrays.asList("contig", "start"), buckets));
+        KuduTable table = client.openTable(physical);
+
+        long rows = 0;
+        KuduSession session = client.newSession();
+        session.setFlushMode(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND);
+        try {
+            for (Chromosome chr : Chromosome.values()) {
+                int length = contigLength(c.getRef(), chr);
+                for (long from = 1; from <= length; from += windowBp) {
+                    CoreQuery window = windowQuery(c, chr, (int) from, (int) Math.min(length, from + windowBp - 1));
+                    List<CoreVariant> counts = AsyncKuduCalls.aggregate(
+                            AsyncKuduCalls.asyncVariantsBySample(kudu, window, sampleIds), false, c.getSize(), null);
+                    AsyncKuduCalls.updateWithCohortWideStats(kudu, window, counts);
+                    for (CoreVariant cv : counts) {
+                        VariantType t = VariantType.fromString(cv.getT());
+                        Insert insert = table.newInsert();
+                        PartialRow row = insert.getRow();
+                        row.addString("contig", cv.getC());
+                        row.addInt("start", cv.getS());
+                        row.addString("ref", cv.getR());
+                        row.addString("alt", cv.getA());
+                        row.addInt("rsid", rsid(cv.getRs()));
+                        row.addByte("vtype", (t == null) ? 0 : t.toByte());
+                        row.addFloat("ac", cv.getAc());
+                        row.addFloat("af", cv.getAf());
+                        row.addInt("homc", cv.getHomc());
+                        row.addInt("hetc", cv.getHetc());
+                        row.addInt("vhomc", cv.getVhomc());
+                        row.addInt("vhetc", cv.getVhetc());
+                        session.apply(insert);
+                        ++rows;
+                    }
+                }
+            }
+            session.flush();
+        } catch (KuduException | RuntimeException e) {
+            session.close();
+            client.deleteTable(physical);
+            failed(kudu, c);
+            throw e;
+        }
+        session.close();
+        RowErrorsAndOverflowStatus errors = session.getPendingErrors();
+        if (errors.getRowErrors().length > 0) {
+            client.deleteTable(physical);
+            failed(kudu, c);
+            throw new RuntimeException(errors.getRowErrors().length + " rows of cohort " + c.getId() + " failed, first error: " + errors.getRowErrors()[0]);
+        }
+
+        Long updated = updated(kudu, c.getId()); // as stored, other instances may have changed it
+        if (updated == null || updated != c.getUpdated()) { // dropped or re-registered during the build
+            client.deleteTable(physical);
+            return;
+        }
+        write(kudu, new Cohort(c.getId(), c.getDataset(), c.getRef(), c.getName(), c.getSamples(), Cohort.STATUS_READY,
+                physical, c.getUpdated()));
+        if (c.getPhysical() != null)
+            deleteTable(kudu, c.getPhysical());
+        System.out.println("Cohort " + c.getId() + " of " + c.getSize() + " samples built into " + physical + ": " +
+                rows + " variants, " + (System.nanoTime() - started) / CoreService.NANO_TO_MILLI + " ms");
+    }
+
+    /**
+     * Variants of a region query in a cohort, read from its counts. Regions are scanned in query order
+     * and variants are returned in genomic order inside a region, skip and limit are applied and later
+     * regions aren't read once a page is complete. hom, het and conj have the same meaning as for
+     * ad-hoc cohorts.
+     */
+    static AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variants(KuduClientManager kudu, CoreQuery query, Cohort c) {
+        Long start = System.nanoTime();
+        KuduClient client = kudu.getClient();
+        boolean hom = query.getSelectHom();
+        boolean het = query.getSelectHet();
+        boolean unlim = query.getLimit() == null;
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        long want = (unlim) ? Long.MAX_VALUE : (long) skip + query.getLimit();
+        int size = c.getSize();
+        List<CoreVariant> coreVariants = new ArrayList<>();
+        long confirmed = 0;
+
+        try {
+            KuduTableHandle table = kudu.getTable(c.getPhysical());
+            for (int region = 0; region < query.getRegions() && confirmed < want && (hom || het); ++region) {
+                List<CoreVariant> inRegion = new ArrayList<>();
+                KuduScanner scanner = KuduCalls.getScanner(client, table, COHORT_COLUMNS, query, region, null, null);
+                try {
+                    while (scanner.hasMoreRows()) {
+                        RowResultIterator results = scanner.nextRows();
+                        while (results != null && results.hasNext()) {
+                            RowResult r = results.next();
+                            int vhomc = (hom) ? r.getInt(10) : 0;
+                            int vhetc = (het) ? r.getInt(11) : 0;
+                            int sc = vhomc + vhetc;
+                            if (sc == 0 || (query.getConj() && sc != size)) continue;
+                            VariantType t = VariantType.fromByte(r.getByte(5));
+                            CoreVariant cv = new CoreVariant(StringPool.contig(r.getString(0)), r.getInt(1),
+                                    (r.getInt(4) == 0) ? null : " rs" + r.getInt(4),
+                                    StringPool.allele(r.getString(3)), StringPool.allele(r.getString(2)),
+                                    (t == null) ? null : t.toString(), r.getFloat(6), r.getFloat(7), r.getInt(8), r.getInt(9),
+                                    null, null, vhomc, vhetc, null, null, null);
+                            cv.setVac(2f * vhomc + vhetc);
+                            cv.setVaf(cv.getVac() / (float) (2 * size));
+                            inRegion.add(cv);
+                        }
+                    }
+                } finally {
+                    scanner.close();
+                }
+                Collections.sort(inRegion);
+                for (CoreVariant cv : inRegion) {
+                    if (confirmed == want) break;
+                    if (confirmed++ >= skip) coreVariants.add(cv);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            kudu.invalidateTable(c.getPhysical());
+            throw new RuntimeException(e);
+        }
+
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, coreVariants);
+    }
+}
@@ -26,107 +26,502 @@
 package au.org.garvan.vsal.kudu.service;
 
 import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.CoreCursor;
 import au.org.garvan.vsal.core.entity.CoreQuery;
 import au.org.garvan.vsal.core.entity.CoreVariant;
 import au.org.garvan.vsal.core.entity.DatasetID;
-import au.org.garvan.vsal.core.entity.VariantType;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import au.org.garvan.vsal.core.entity.VariantPage;
 import au.org.garvan.vsal.core.service.CoreService;
-import au.org.garvan.vsal.core.util.ReadConfig;
-import org.apache.kudu.Schema;
+import au.org.garvan.vsal.core.service.VariantStore;
+import au.org.garvan.vsal.core.util.StringPool;
+import org.apache.kudu.ColumnSchema;
 import org.apache.kudu.client.*;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.apache.kudu.client.KuduPredicate.newComparisonPredicate;
 
 public class KuduCalls {
 
-    private static KuduScanner getScanner(KuduClient client, String tableName, List<String> projectedColumns, CoreQuery query, Integer region, Integer sampleId)
-            throws KuduException {
-        KuduTable table = client.openTable(tableName);
-        Schema schema = table.getSchema();
-        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table);
+    private static final List<String> VARIANT_COLUMNS =
+            Arrays.asList("contig", "start", "ref", "alt", "rsid", "vtype", "af", "ac", "homc", "hetc");
+
+    // # of merged rows per batch of a stream
+    private static final int STREAM_ROWS = 1024;
+
+    /*
+     * All dbSNP ids of a query in a single predicate.
+     */
+    static KuduPredicate rsidPredicate(ColumnSchema rsid, List<Integer> rsIds) {
+        return (rsIds.size() == 1) ?
+                newComparisonPredicate(rsid, KuduPredicate.ComparisonOp.EQUAL, rsIds.get(0)) :
+                KuduPredicate.newInListPredicate(rsid, rsIds);
+    }
+
+    /*
+     * Region predicates of a query, shared by scanners and scan tokens.
+     * after - if not null, the scan starts at its start position (region of a query is resumed),
+     *         rows at this position up to the cursor's key are filtered out by the caller
+     */
+    private static void addRegionPredicates(AbstractKuduScannerBuilder<?, ?> ksb, KuduTableHandle table, List<String> projectedColumns,
+                                            CoreQuery query, Integer region, CoreCursor after) {
         ksb.setProjectedColumnNames(projectedColumns);
         if (query.getChromosome() != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("contig"), KuduPredicate.ComparisonOp.EQUAL, query.getChromosome()[region].toString()));
-        if (query.getPositionStart() != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.GREATER_EQUAL, query.getPositionStart()[region]));
+            ksb.addPredicate(newComparisonPredicate(table.getContig(), KuduPredicate.ComparisonOp.EQUAL, query.getChromosome()[region].toString()));
+        if (after != null)
+            ksb.addPredicate(newComparisonPredicate(table.getStart(), KuduPredicate.ComparisonOp.GREATER_EQUAL,
+                    (query.getPositionStart() == null) ? after.getS() : Math.max(after.getS(), query.getPositionStart()[region])));
+        else if (query.getPositionStart() != null)
+            ksb.addPredicate(newComparisonPredicate(table.getStart(), KuduPredicate.ComparisonOp.GREATER_EQUAL, query.getPositionStart()[region]));
         if (query.getPositionEnd() != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.LESS_EQUAL, query.getPositionEnd()[region]));
+            ksb.addPredicate(newComparisonPredicate(table.getStart(), KuduPredicate.ComparisonOp.LESS_EQUAL, query.getPositionEnd()[region]));
         if (query.getType() != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("vtype"), KuduPredicate.ComparisonOp.EQUAL, query.getType().toByte()));
+            ksb.addPredicate(newComparisonPredicate(table.getVtype(), KuduPredicate.ComparisonOp.EQUAL, query.getType().toByte()));
         if (query.getRefAllele() != null && !query.getRefAllele().isEmpty())
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("ref"), KuduPredicate.ComparisonOp.EQUAL, query.getRefAllele()));
+            ksb.addPredicate(newComparisonPredicate(table.getRef(), KuduPredicate.ComparisonOp.EQUAL, query.getRefAllele()));
         if (query.getAltAllele() != null && !query.getAltAllele().isEmpty())
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("alt"), KuduPredicate.ComparisonOp.EQUAL, query.getAltAllele()));
-        if (query.getDbSNP() != null && !query.getDbSNP().isEmpty())
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("rsid"), KuduPredicate.ComparisonOp.EQUAL, query.getDbSNP().get(0)));
+            ksb.addPredicate(newComparisonPredicate(table.getAlt(), KuduPredicate.ComparisonOp.EQUAL, query.getAltAllele()));
+        if (query.getRsIds() != null && !query.getRsIds().isEmpty())
+            ksb.addPredicate(rsidPredicate(table.getRsid(), query.getRsIds()));
+    }
+
+    /*
+     * lim - # of rows to read, null for unlimited. Rows come in no particular order,
+     *       a limited scan of a multi-tablet table returns arbitrary rows of a region.
+     */
+    static KuduScanner getScanner(KuduClient client, KuduTableHandle table, List<String> projectedColumns, CoreQuery query,
+                                          Integer region, CoreCursor after, Integer lim) {
+        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table.getTable());
+        addRegionPredicates(ksb, table, projectedColumns, query, region, after);
+        if (lim != null && lim >= 0 && after == null)
+            ksb.limit(lim); // some rows of a resumed region are dropped after the scan
         return ksb.build();
     }
 
-    private static KuduScanner getScannerForVariant(KuduClient client, String tableName, List<String> projectedColumns,
-                                                    String chr, Integer start, String ref, String alt) throws KuduException {
-        KuduTable table = client.openTable(tableName);
-        Schema schema = table.getSchema();
-        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table);
+    /*
+     * One fault tolerant scanner per tablet of a region, each returns rows in primary key
+     * order (contig, start, ref, alt). lim applies to every tablet, see TabletMerge.
+     */
+    static List<KuduScanner> getTabletScanners(KuduClient client, KuduTableHandle table, List<String> projectedColumns,
+                                               CoreQuery query, Integer region, CoreCursor after, Integer lim) throws Exception {
+        KuduScanToken.KuduScanTokenBuilder tb = client.newScanTokenBuilder(table.getTable());
+        addRegionPredicates(tb, table, projectedColumns, query, region, after);
+        tb.setFaultTolerant(true);
+        if (lim != null && lim >= 0 && after == null)
+            tb.limit(lim);
+        List<KuduScanner> scanners = new ArrayList<>();
+        try {
+            for (KuduScanToken token : tb.build())
+                scanners.add(token.intoScanner(client));
+        } catch (Exception e) {
+            close(scanners);
+            throw e;
+        }
+        return scanners;
+    }
+
+    private static void close(List<KuduScanner> scanners) {
+        for (KuduScanner scanner : scanners) {
+            try {
+                scanner.close();
+            } catch (KuduException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Next rows of a tablet scanner as a batch, null once the scanner is exhausted or the query has been cancelled.
+     */
+    private static VariantBatch nextRows(KuduScanner scanner, AtomicBoolean cancelled) throws KuduException {
+        while (!cancelled.get() && scanner.hasMoreRows()) {
+            RowResultIterator results = scanner.nextRows();
+            if (results == null) break;
+            if (!results.hasNext()) continue;
+            VariantBatch rows = new VariantBatch(results.getNumRows());
+            while (results.hasNext())
+                append(rows, results.next(), null);
+            return rows;
+        }
+        return null;
+    }
+
+    private static KuduScanner getScannerForVariant(KuduClient client, KuduTableHandle table, List<String> projectedColumns,
+                                                    String chr, Integer start, String ref, String alt) {
+        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table.getTable());
         ksb.setProjectedColumnNames(projectedColumns);
         if (chr != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("contig"), KuduPredicate.ComparisonOp.EQUAL, chr));
+            ksb.addPredicate(newComparisonPredicate(table.getContig(), KuduPredicate.ComparisonOp.EQUAL, chr));
         if (start != null)
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("start"), KuduPredicate.ComparisonOp.EQUAL, start));
+            ksb.addPredicate(newComparisonPredicate(table.getStart(), KuduPredicate.ComparisonOp.EQUAL, start));
         if (ref != null && !ref.isEmpty())
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("ref"), KuduPredicate.ComparisonOp.EQUAL, ref));
+            ksb.addPredicate(newComparisonPredicate(table.getRef(), KuduPredicate.ComparisonOp.EQUAL, ref));
         if (alt != null && !alt.isEmpty())
-            ksb.addPredicate(newComparisonPredicate(schema.getColumn("alt"), KuduPredicate.ComparisonOp.EQUAL, alt));
+            ksb.addPredicate(newComparisonPredicate(table.getAlt(), KuduPredicate.ComparisonOp.EQUAL, alt));
         return ksb.build();
     }
 
-    public static AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variants(CoreQuery query) {
-        List<CoreVariant> coreVariants = new ArrayList<>();
-        KuduClient client = new KuduClient.KuduClientBuilder(ReadConfig.getProp().getProperty("kuduMaster")).build();
-        List<String> columns = Arrays.asList("contig", "start", "ref", "alt", "rsid", "vtype", "af", "ac", "homc", "hetc");
+    /*
+     * Targeted primary key scan of a single contig, restricted to start positions found in the rsid index.
+     */
+    private static KuduScanner getScannerForPositions(KuduClient client, KuduTableHandle table, List<String> projectedColumns,
+                                                      CoreQuery query, String chr, List<Integer> starts) {
+        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table.getTable());
+        ksb.setProjectedColumnNames(projectedColumns);
+        ksb.addPredicate(newComparisonPredicate(table.getContig(), KuduPredicate.ComparisonOp.EQUAL, chr));
+        ksb.addPredicate(KuduPredicate.newInListPredicate(table.getStart(), starts));
+        ksb.addPredicate(rsidPredicate(table.getRsid(), query.getRsIds()));
+        if (query.getType() != null)
+            ksb.addPredicate(newComparisonPredicate(table.getVtype(), KuduPredicate.ComparisonOp.EQUAL, query.getType().toByte()));
+        if (query.getRefAllele() != null && !query.getRefAllele().isEmpty())
+            ksb.addPredicate(newComparisonPredicate(table.getRef(), KuduPredicate.ComparisonOp.EQUAL, query.getRefAllele()));
+        if (query.getAltAllele() != null && !query.getAltAllele().isEmpty())
+            ksb.addPredicate(newComparisonPredicate(table.getAlt(), KuduPredicate.ComparisonOp.EQUAL, query.getAltAllele()));
+        return ksb.build();
+    }
+
+    /*
+     * Row of VARIANT_COLUMNS projection appended to a batch, unless it isn't after the cursor.
+     */
+    private static boolean append(VariantBatch batch, RowResult result, CoreCursor after) {
+        int s = result.getInt(1);
+        String r = StringPool.allele(result.getString(2));
+        String a = StringPool.allele(result.getString(3));
+        if (after != null && !after.isBefore(s, r, a)) return false;
+        batch.add(StringPool.contig(result.getString(0)), s, r, a, result.getInt(4), result.getByte(5),
+                result.getFloat(7), result.getFloat(6), result.getInt(8), result.getInt(9));
+        return true;
+    }
+
+    /*
+     * Scans a single region, stops as soon as the query has been cancelled.
+     * Only variants after the cursor are returned for a resumed region.
+     * Variants are returned in CoreVariant order.
+     *
+     * want - # of leading variants of the region, null for all. A plain scan for want + 1 rows
+     *        comes first: if the region has no more than want variants (e.g. a query capped by
+     *        CoreQueryUtils, rather than paged), they're all there and only need sorting.
+     *        Otherwise the leading rows are read by per-tablet ordered scans and merged,
+     *        a plain limited scan would return arbitrary rows of a hash partitioned table.
+     */
+    private static VariantBatch regionVariants(KuduClient client, KuduTableHandle table, List<String> columns,
+                                               CoreQuery query, int region, CoreCursor after, Integer want,
+                                               AtomicBoolean cancelled) throws Exception {
+        VariantBatch batch = new VariantBatch();
+        boolean unlim = want == null;
+        int lim = (unlim) ? 0 : want + 1;
+        KuduScanner scanner = getScanner(client, table, columns, query, region, after, (unlim) ? null : lim);
+
+        try {
+            while ((unlim || batch.size() < lim) && !cancelled.get() && scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                if (results == null) break;
+                while ((unlim || batch.size() < lim) && results.hasNext())
+                    append(batch, results.next(), after);
+            }
+        } finally {
+            scanner.close();
+        }
+        if (unlim || batch.size() <= want) {
+            batch.sort();
+            return batch;
+        }
+
+        List<KuduScanner> scanners = getTabletScanners(client, table, columns, query, region, after, want);
+        try {
+            List<TabletMerge.Tablet> tablets = new ArrayList<>(scanners.size());
+            for (KuduScanner s : scanners)
+                tablets.add(() -> nextRows(s, cancelled));
+            return new TabletMerge(tablets, after).next(want);
+        } finally {
+            close(scanners);
+        }
+    }
+
+    private static boolean isRsidOnly(CoreQuery query) {
+        return query.getChromosome() == null && query.getRsIds() != null && !query.getRsIds().isEmpty();
+    }
 
-        int row = 0;
-        int region = 0;
+    /*
+     * null if the dataset has no rsid index
+     */
+    private static KuduTableHandle getRsidIndex(KuduClientManager kudu, String tableName) throws KuduException {
+        try {
+            return kudu.getTable(tableName);
+        } catch (KuduException e) {
+            if (e.getStatus().isNotFound()) return null;
+            throw e;
+        }
+    }
+
+    /*
+     * dbSNP only queries: ids are resolved to (contig, start) through <dataset>_rsid_idx
+     * (see RsidIndexBuilder), then each contig is read by a primary key scan restricted
+     * to the start positions found. The variants table isn't scanned in full.
+     * Returns null if the dataset has no index, the caller falls back to a scan by rsid.
+     * skip and limit are applied, variants are in CoreVariant order, db time (ms) is the key.
+     */
+    private static AbstractMap.SimpleImmutableEntry<Long,VariantBatch> rsidVariants(KuduClientManager kudu, CoreQuery query) {
+        KuduClient client = kudu.getClient();
         boolean unlim = query.getLimit() == null;
         int lim = (unlim) ? 0 : query.getLimit();
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
         Long start = System.nanoTime();
+        String indexName = getTableName(query.getDatasetId(), query.getReference(), RsidIndexBuilder.SUFFIX);
+        String tableName = getTableName(query.getDatasetId(), query.getReference(), "_variants");
 
+        VariantBatch batch = new VariantBatch();
         try {
-            while (region < query.getRegions()) {
-                String tableName = getTableName(query.getDatasetId(), query.getReference(), "_variants");
-                KuduScanner scanner = getScanner(client, tableName, columns, query, region, null);
-                while ((unlim || row < lim) && scanner.hasMoreRows()) {
+            KuduTableHandle index = getRsidIndex(kudu, indexName);
+            if (index == null) return null;
+
+            Map<String, SortedSet<Integer>> starts = new TreeMap<>();
+            KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(index.getTable());
+            ksb.setProjectedColumnNames(Arrays.asList("contig", "start"));
+            ksb.addPredicate(rsidPredicate(index.getRsid(), query.getRsIds()));
+            KuduScanner scanner = ksb.build();
+            try {
+                while (scanner.hasMoreRows()) {
                     RowResultIterator results = scanner.nextRows();
-                    if (results == null) break;
-                    while ((unlim || row < lim) && results.hasNext()) {
-                        RowResult result = results.next();
-                        VariantType t = VariantType.fromByte(result.getByte(5));
-                        String type = (t == null) ? null : t.toString();
-                        CoreVariant cv = new CoreVariant(result.getString(0), result.getInt(1),
-                                (result.getInt(4) == 0) ? null : " rs" + result.getInt(4),
-                                result.getString(3), result.getString(2), type, result.getFloat(7),
-                                result.getFloat(6), result.getInt(8), result.getInt(9),
-                                null, null, null, null, null, null, null);
-                        coreVariants.add(cv);
-                        ++row;
+                    while (results != null && results.hasNext()) {
+                        RowResult r = results.next();
+                        starts.computeIfAbsent(StringPool.contig(r.getString(0)), k -> new TreeSet<>()).add(r.getInt(1));
                     }
                 }
+            } finally {
                 scanner.close();
-                region++;
             }
+
+            KuduTableHandle table = kudu.getTable(tableName);
+            for (Map.Entry<String, SortedSet<Integer>> e : starts.entrySet()) {
+                scanner = getScannerForPositions(client, table, VARIANT_COLUMNS, query, e.getKey(), new ArrayList<>(e.getValue()));
+                try {
+                    while (scanner.hasMoreRows()) {
+                        RowResultIterator results = scanner.nextRows();
+                        while (results != null && results.hasNext())
+                            append(batch, results.next(), null);
+                    }
+                } finally {
+                    scanner.close();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            kudu.invalidateTable(indexName);
+            kudu.invalidateTable(tableName);
+            throw new RuntimeException(e);
+        }
+
+        batch.sort();
+        int from = Math.min(skip, batch.size());
+        int to = (unlim) ? batch.size() : Math.min(batch.size(), from + lim);
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, (from == 0 && to == batch.size()) ? batch : batch.range(from, to));
+    }
+
+    /*
+     * Regions are scanned concurrently, at most kudu.getRegionConcurrency() at a time.
+     * Results keep the order of regions in a query, variants inside a region are
+     * in CoreVariant order. Once the leading completed regions hold enough variants
+     * to fill the limit, the remaining scans are cancelled.
+     *
+     * Paging: the first skip variants are dropped. If the limit has been reached, the page
+     * carries a token of the last variant, a query with this token resumes the scan of its
+     * region right after it, earlier regions and rows aren't read again.
+     */
+    static VariantPage variants(KuduClientManager kudu, CoreQuery query) {
+        if (isRsidOnly(query)) {
+            AbstractMap.SimpleImmutableEntry<Long,VariantBatch> indexed = rsidVariants(kudu, query);
+            if (indexed != null) return new VariantPage(indexed.getKey(), indexed.getValue().toCoreVariants(), null);
+        }
+
+        final KuduClient client = kudu.getClient();
+        final List<String> columns = VARIANT_COLUMNS;
+
+        int regions = query.getRegions();
+        boolean unlim = query.getLimit() == null;
+        int lim = (unlim) ? 0 : query.getLimit();
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        final Integer want = (unlim) ? null : skip + lim; // # of leading variants to read
+        final CoreCursor cursor = CoreCursor.fromToken(query.getCursor());
+        int first = (cursor == null) ? 0 : cursor.getRegion(); // first region to scan
+        Long start = System.nanoTime();
+        String tableName = getTableName(query.getDatasetId(), query.getReference(), "_variants");
+
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        List<Future<AbstractMap.SimpleImmutableEntry<Integer,VariantBatch>>> futures = new ArrayList<>(regions);
+        List<VariantBatch> byRegion = new ArrayList<>(Collections.<VariantBatch>nCopies(regions, null));
+        for (int region = 0; region < first && region < regions; ++region)
+            byRegion.set(region, new VariantBatch(0)); // returned by previous pages
+
+        try {
+            final KuduTableHandle table = kudu.getTable(tableName);
+            CompletionService<AbstractMap.SimpleImmutableEntry<Integer,VariantBatch>> scans =
+                    new ExecutorCompletionService<>(kudu.getScanExecutor());
+
+            int submitted = first;
+            int completed = first;
+            int prefix = first; // # of leading regions completed
+            int prefixRows = 0; // # of variants in leading completed regions
+
+            while (submitted < regions && submitted - first < kudu.getRegionConcurrency()) {
+                final int region = submitted++;
+                final CoreCursor after = (region == first) ? cursor : null;
+                futures.add(scans.submit(() -> new AbstractMap.SimpleImmutableEntry<>(region,
+                        regionVariants(client, table, columns, query, region, after, want, cancelled))));
+            }
+
+            while (completed < submitted) {
+                AbstractMap.SimpleImmutableEntry<Integer,VariantBatch> res = scans.take().get();
+                ++completed;
+                byRegion.set(res.getKey(), res.getValue());
+                while (prefix < regions && byRegion.get(prefix) != null)
+                    prefixRows += byRegion.get(prefix++).size();
+                if (!unlim && prefixRows >= want)
+                    break; // later regions can't make it into results
+                if (submitted < regions) {
+                    final int region = submitted++;
+                    futures.add(scans.submit(() -> new AbstractMap.SimpleImmutableEntry<>(region,
+                            regionVariants(client, table, columns, query, region, null, want, cancelled))));
+                }
+            }
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            kudu.invalidateTable(tableName); // the next query reopens the table, in case its schema has changed
+            throw new RuntimeException(e.getCause());
         } catch (Exception e) {
             e.printStackTrace();
+            kudu.invalidateTable(tableName);
             throw new RuntimeException(e);
         } finally {
-            try {
-                client.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+            cancelled.set(true);
+            for (Future<?> f : futures) f.cancel(false);
+        }
+
+        // only returned rows become CoreVariant
+        List<CoreVariant> coreVariants = new ArrayList<>();
+        int lastRegion = first;
+        int skipped = 0;
+        for (int region = first; region < regions && byRegion.get(region) != null; ++region) {
+            VariantBatch batch = byRegion.get(region);
+            for (int i = 0; i < batch.size(); ++i) {
+                if (!unlim && coreVariants.size() >= lim) break;
+                if (skipped < skip) {
+                    ++skipped;
+                    continue;
+                }
+                coreVariants.add(batch.toCoreVariant(i));
+                lastRegion = region;
             }
         }
+
+        String next = (!unlim && lim > 0 && coreVariants.size() == lim && query.getChromosome() != null) ?
+                new CoreCursor(lastRegion, coreVariants.get(lim - 1)).toToken() : null;
         Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
-        return new AbstractMap.SimpleImmutableEntry(elapsedDbMs, coreVariants);
+        return new VariantPage(elapsedDbMs, coreVariants, next);
+    }
+
+    /**
+     * Streams variants of a region query to a sink as they arrive from Kudu, one batch of rows at a time.
+     * Regions are scanned one by one in query order, so memory doesn't depend on # of variants.
+     * skip, limit and cursor have the same meaning as in {@link #variants(KuduClientManager, CoreQuery)}:
+     * limited or skipped streams read each region by ordered per-tablet scans merged in key order,
+     * so the rows and the continuation token follow CoreVariant order. Unlimited streams are read
+     * by plain scans in no particular order.
+     *
+     * @return time spent in Kudu calls (ms), # of variants streamed and continuation token or null
+     */
+    static VariantPage streamVariants(KuduClientManager kudu, CoreQuery query, VariantStore.VariantSink sink) throws IOException {
+        if (isRsidOnly(query)) {
+            AbstractMap.SimpleImmutableEntry<Long,VariantBatch> indexed = rsidVariants(kudu, query);
+            if (indexed != null) {
+                if (!indexed.getValue().isEmpty()) sink.accept(indexed.getValue());
+                return new VariantPage(indexed.getKey(), Collections.<CoreVariant>emptyList(), null, indexed.getValue().size());
+            }
+        }
+
+        final KuduClient client = kudu.getClient();
+        int regions = query.getRegions();
+        boolean unlim = query.getLimit() == null;
+        int lim = (unlim) ? 0 : query.getLimit();
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        boolean ordered = !unlim || skip > 0;
+        CoreCursor cursor = CoreCursor.fromToken(query.getCursor());
+        int first = (cursor == null) ? 0 : cursor.getRegion();
+        String tableName = getTableName(query.getDatasetId(), query.getReference(), "_variants");
+        final AtomicBoolean cancelled = new AtomicBoolean(false); // a stream runs to its end
+
+        long dbNs = 0;
+        int skipped = 0;
+        int total = 0;
+        CoreCursor last = null;
+
+        try {
+            KuduTableHandle table = kudu.getTable(tableName);
+            for (int region = first; region < regions && (unlim || total < lim); ++region) {
+                CoreCursor after = (region == first) ? cursor : null;
+                if (!ordered) {
+                    KuduScanner scanner = getScanner(client, table, VARIANT_COLUMNS, query, region, after, null);
+                    try {
+                        while (scanner.hasMoreRows()) {
+                            long t0 = System.nanoTime();
+                            RowResultIterator results = scanner.nextRows();
+                            dbNs += System.nanoTime() - t0;
+                            if (results == null) break;
+                            VariantBatch batch = new VariantBatch(results.getNumRows());
+                            while (results.hasNext())
+                                if (append(batch, results.next(), after)) ++total;
+                            if (!batch.isEmpty()) sink.accept(batch);
+                        }
+                    } finally {
+                        scanner.close();
+                    }
+                    continue;
+                }
+
+                List<KuduScanner> scanners = getTabletScanners(client, table, VARIANT_COLUMNS, query, region, after,
+                        (unlim) ? null : skip - skipped + lim - total);
+                try {
+                    List<TabletMerge.Tablet> tablets = new ArrayList<>(scanners.size());
+                    for (KuduScanner s : scanners)
+                        tablets.add(() -> nextRows(s, cancelled));
+                    TabletMerge merge = new TabletMerge(tablets, after);
+                    while (unlim || total < lim) {
+                        long t0 = System.nanoTime();
+                        VariantBatch batch = merge.next(STREAM_ROWS);
+                        dbNs += System.nanoTime() - t0;
+                        if (batch.isEmpty()) break;
+                        int from = Math.min(skip - skipped, batch.size());
+                        int to = (unlim) ? batch.size() : Math.min(batch.size(), from + lim - total);
+                        skipped += from;
+                        if (from == to) continue;
+                        if (from > 0 || to < batch.size()) batch = batch.range(from, to);
+                        total += batch.size();
+                        int i = batch.size() - 1;
+                        last = new CoreCursor(region, batch.getContig(i), batch.getStart(i), batch.getRef(i), batch.getAlt(i));
+                        sink.accept(batch);
+                    }
+                } finally {
+                    close(scanners);
+                }
+            }
+        } catch (IOException e) {
+            throw e; // client has gone
+        } catch (Exception e) {
+            e.printStackTrace();
+            kudu.invalidateTable(tableName);
+            throw new RuntimeException(e);
+        }
+
+        String next = (!unlim && lim > 0 && total == lim && query.getChromosome() != null) ? last.toToken() : null;
+        return new VariantPage(dbNs / CoreService.NANO_TO_MILLI, Collections.<CoreVariant>emptyList(), next, total);
     }
 
     public static String getTableName(DatasetID dataset, Reference ref, String suffix) {
@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.util.ReadConfig;
+import org.apache.kudu.client.AsyncKuduClient;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kudu client, opened tables and background work shared by all Kudu call sites.
+ * <p>
+ * One thread safe client is created at deployment, when Kudu is the variant store, and closed
+ * on undeploy. Region scans run on a shared pool of scan threads. Tables, sample registries and
+ * registered cohorts are cached, see {@link KuduTableCache}, {@link SampleRegistryCache} and
+ * {@link CohortRegistryCache}, cohort counts are built on a background thread, see {@link CohortTables}.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@ApplicationScoped
+public class KuduClientManager {
+
+    private AsyncKuduClient asyncClient;
+    private KuduClient client;
+    private KuduTableCache tables;
+    private ExecutorService scanExecutor;
+    private int regionConcurrency; // max # of concurrent region scans per query
+    private SampleRegistryCache samples;
+    private CohortRegistryCache cohorts;
+    private ScheduledExecutorService refresher;
+    private ExecutorService cohortBuilder;
+
+    @PostConstruct
+    public void init() {
+        Properties p = ReadConfig.getProp();
+        String kuduMaster = p.getProperty("kuduMaster");
+        asyncClient = new AsyncKuduClient.AsyncKuduClientBuilder(kuduMaster).build();
+        client = asyncClient.syncClient();
+        tables = new KuduTableCache(client, Long.parseLong(p.getProperty("kuduTableTtlSec", "300")));
+        regionConcurrency = Math.max(1, Integer.parseInt(p.getProperty("kuduRegionConcurrency", "8")));
+        scanExecutor = Executors.newFixedThreadPool(Integer.parseInt(p.getProperty("kuduScanThreads", "32")), daemonThreads("kudu-scan-"));
+        samples = new SampleRegistryCache(this);
+        cohorts = new CohortRegistryCache(this);
+        long refreshSec = Long.parseLong(p.getProperty("sampleRegistryRefreshSec", "600"));
+        refresher = Executors.newSingleThreadScheduledExecutor(daemonThreads("kudu-refresh-"));
+        if (refreshSec > 0)
+            refresher.scheduleWithFixedDelay(samples::refreshAll, refreshSec, refreshSec, TimeUnit.SECONDS);
+        cohortBuilder = Executors.newSingleThreadExecutor(daemonThreads("kudu-cohort-"));
+        long cohortRefreshHours = Long.parseLong(p.getProperty("cohortRefreshHours", "24"));
+        if (cohortRefreshHours > 0)
+            refresher.scheduleWithFixedDelay(this::rebuildCohorts, cohortRefreshHours, cohortRefreshHours, TimeUnit.HOURS);
+        System.out.println("Kudu client has been created for " + kuduMaster);
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        cohortBuilder.shutdownNow();
+        scanExecutor.shutdownNow();
+        try {
+            samples.clear();
+            cohorts.clear();
+            tables.clear();
+            asyncClient.close();
+            System.out.println("Kudu client has been closed");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public AsyncKuduClient getAsyncClient() {
+        return asyncClient;
+    }
+
+    public KuduClient getClient() {
+        return client;
+    }
+
+    public ExecutorService getScanExecutor() {
+        return scanExecutor;
+    }
+
+    public int getRegionConcurrency() {
+        return regionConcurrency;
+    }
+
+    public KuduTableHandle getTable(String tableName) throws KuduException {
+        return tables.get(tableName);
+    }
+
+    public void invalidateTable(String tableName) {
+        tables.invalidate(tableName);
+    }
+
+    public SampleRegistry getSamples(String tableName) throws KuduException {
+        return samples.get(tableName);
+    }
+
+    public SampleRegistry refreshSamples(String tableName) throws KuduException {
+        return samples.refresh(tableName);
+    }
+
+    public CohortRegistryCache getCohorts() {
+        return cohorts;
+    }
+
+    /**
+     * Queues a build of cohort counts, builds run one at a time.
+     */
+    public void buildCohort(final Cohort cohort) {
+        cohortBuilder.submit(() -> {
+            try {
+                CohortTables.build(this, cohort);
+            } catch (Exception e) {
+                System.out.println("Can't build cohort " + cohort.getId() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /*
+     * Keeps counts of registered cohorts in line with _gt tables, and the cohort registry
+     * in line with changes made by other instances.
+     */
+    private void rebuildCohorts() {
+        try {
+            for (Cohort cohort : cohorts.refresh().values())
+                buildCohort(cohort);
+        } catch (Exception e) {
+            System.out.println("Can't list cohorts: " + e.getMessage());
+        }
+    }
+}
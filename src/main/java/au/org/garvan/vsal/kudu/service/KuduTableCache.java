@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduTable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of opened Kudu tables, keyed by table name.
+ * <p>
+ * Opening a table is a master RPC. Handles are reused until their TTL expires,
+ * then the table is reopened and the handle replaced. A handle can also be
+ * invalidated explicitly, e.g. after a scan failed on a stale schema.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class KuduTableCache {
+
+    private final KuduClient client;
+    private final long ttlNs;
+    private final ConcurrentMap<String, KuduTableHandle> handles = new ConcurrentHashMap<>();
+
+    public KuduTableCache(KuduClient client, long ttlSec) {
+        this.client = client;
+        this.ttlNs = TimeUnit.SECONDS.toNanos(ttlSec);
+    }
+
+    public KuduTableHandle get(String tableName) throws KuduException {
+        KuduTableHandle handle = handles.get(tableName);
+        if (handle != null && !handle.isExpired(ttlNs))
+            return handle;
+
+        // concurrent refreshes of the same table are harmless, the last one wins
+        KuduTable table = client.openTable(tableName);
+        if (handle != null && !handle.hasSameSchema(table))
+            System.out.println("Schema of Kudu table " + tableName + " has changed, table handle is refreshed");
+        KuduTableHandle fresh = new KuduTableHandle(table);
+        handles.put(tableName, fresh);
+        return fresh;
+    }
+
+    public void invalidate(String tableName) {
+        handles.remove(tableName);
+    }
+
+    public void clear() {
+        handles.clear();
+    }
+}
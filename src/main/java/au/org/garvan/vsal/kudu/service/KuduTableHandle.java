@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduTable;
+
+/**
+ * An opened Kudu table with the column schemas used in predicates resolved once.
+ * <p>
+ * A column that doesn't exist in the table is resolved to null.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class KuduTableHandle {
+
+    private final KuduTable table;
+    private final long openedAt; // ns
+
+    private final ColumnSchema contig;
+    private final ColumnSchema start;
+    private final ColumnSchema ref;
+    private final ColumnSchema alt;
+    private final ColumnSchema rsid;
+    private final ColumnSchema vtype;
+    private final ColumnSchema hom;
+    private final ColumnSchema sampleId;
+    private final ColumnSchema sampleName;
+
+    public KuduTableHandle(KuduTable table) {
+        this.table = table;
+        this.openedAt = System.nanoTime();
+        Schema schema = table.getSchema();
+        this.contig = column(schema, "contig");
+        this.start = column(schema, "start");
+        this.ref = column(schema, "ref");
+        this.alt = column(schema, "alt");
+        this.rsid = column(schema, "rsid");
+        this.vtype = column(schema, "vtype");
+        this.hom = column(schema, "hom");
+        this.sampleId = column(schema, "sample_id");
+        this.sampleName = column(schema, "sample_name");
+    }
+
+    private static ColumnSchema column(Schema schema, String name) {
+        return schema.hasColumn(name) ? schema.getColumn(name) : null;
+    }
+
+    boolean isExpired(long ttlNs) {
+        return System.nanoTime() - openedAt > ttlNs;
+    }
+
+    /*
+     * Kudu doesn't expose a schema version to clients, but every altered column
+     * gets a new column id, so comparing ids (and table ids, in case the table
+     * has been recreated) detects a schema change.
+     */
+    boolean hasSameSchema(KuduTable other) {
+        if (!table.getTableId().equals(other.getTableId())) return false;
+        Schema s1 = table.getSchema();
+        Schema s2 = other.getSchema();
+        if (s1.getColumnCount() != s2.getColumnCount()) return false;
+        for (ColumnSchema c : s1.getColumns()) {
+            if (!s2.hasColumn(c.getName())) return false;
+            if (!c.equals(s2.getColumn(c.getName()))) return false;
+            if (s1.hasColumnIds() && s2.hasColumnIds() && s1.getColumnId(c.getName()) != s2.getColumnId(c.getName()))
+                return false;
+        }
+        return true;
+    }
+
+    public KuduTable getTable() {
+        return table;
+    }
+
+    public String getName() {
+        return table.getName();
+    }
+
+    public ColumnSchema getContig() {
+        return contig;
+    }
+
+    public ColumnSchema getStart() {
+        return start;
+    }
+
+    public ColumnSchema getRef() {
+        return ref;
+    }
+
+    public ColumnSchema getAlt() {
+        return alt;
+    }
+
+    public ColumnSchema getRsid() {
+        return rsid;
+    }
+
+    public ColumnSchema getVtype() {
+        return vtype;
+    }
+
+    public ColumnSchema getHom() {
+        return hom;
+    }
+
+    public ColumnSchema getSampleId() {
+        return sampleId;
+    }
+
+    public ColumnSchema getSampleName() {
+        return sampleName;
+    }
+}
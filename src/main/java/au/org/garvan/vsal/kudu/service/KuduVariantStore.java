@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import au.org.garvan.vsal.core.service.VariantStore;
+import org.apache.kudu.client.KuduException;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Set;
+
+import static au.org.garvan.vsal.kudu.service.KuduCalls.getTableName;
+
+/**
+ * Variant store on Kudu tables: <code>&lt;dataset&gt;_variants</code>, <code>_gt</code>, <code>_samples</code>,
+ * <code>_rsid_idx</code> and cohort tables. Calls are made by {@link KuduCalls}, {@link AsyncKuduCalls}
+ * and {@link CohortTables} through the shared client of {@link KuduClientManager}.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@Vetoed
+public class KuduVariantStore implements VariantStore {
+
+    private final KuduClientManager kudu;
+
+    public KuduVariantStore(KuduClientManager kudu) {
+        this.kudu = kudu;
+    }
+
+    @Override
+    public boolean hasVariants(DatasetID dataset, Reference ref) {
+        try {
+            kudu.getTable(getTableName(dataset, ref, "_variants"));
+            return true;
+        } catch (KuduException e) {
+            if (e.getStatus().isNotFound()) return false;
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public VariantPage variants(CoreQuery query) {
+        return KuduCalls.variants(kudu, query);
+    }
+
+    @Override
+    public VariantPage streamVariants(CoreQuery query, VariantSink sink) throws IOException {
+        return KuduCalls.streamVariants(kudu, query, sink);
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variantsInVirtualCohort(CoreQuery query, Set<String> samples) {
+        return AsyncKuduCalls.variantsInVirtualCohort(kudu, query, samples);
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<String>> selectSamplesByGT(CoreQuery query) {
+        return AsyncKuduCalls.selectSamplesByGT(kudu, query);
+    }
+
+    @Override
+    public int refreshSamples(DatasetID dataset, Reference ref) {
+        try {
+            return kudu.refreshSamples(getTableName(dataset, ref, "_samples")).size();
+        } catch (KuduException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Cohort getCohort(DatasetID dataset, Reference ref, String name) {
+        try {
+            return CohortTables.get(kudu, CohortTables.cohortId(dataset, ref, name));
+        } catch (KuduException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Cohort registerCohort(DatasetID dataset, Reference ref, String name, List<String> samples) {
+        try {
+            Cohort cohort = CohortTables.register(kudu, dataset, ref, name, samples);
+            kudu.buildCohort(cohort);
+            return cohort;
+        } catch (KuduException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Cohort rebuildCohort(DatasetID dataset, Reference ref, String name) {
+        Cohort cohort = getCohort(dataset, ref, name);
+        if (cohort != null) kudu.buildCohort(cohort);
+        return cohort;
+    }
+
+    @Override
+    public boolean dropCohort(DatasetID dataset, Reference ref, String name) {
+        try {
+            return CohortTables.drop(kudu, CohortTables.cohortId(dataset, ref, name));
+        } catch (KuduException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> cohortVariants(CoreQuery query, Cohort cohort) {
+        return CohortTables.variants(kudu, query, cohort);
+    }
+}
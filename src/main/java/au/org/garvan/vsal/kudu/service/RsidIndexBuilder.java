@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.util.CoreQueryUtils;
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static au.org.garvan.vsal.kudu.service.KuduCalls.getTableName;
+
+/**
+ * Offline builder of a <code>&lt;dataset&gt;_rsid_idx</code> table from a <code>&lt;dataset&gt;_variants</code> table.
+ * <p>
+ * Usage: RsidIndexBuilder kuduMaster dataset asm [hash buckets]
+ * <p>
+ * The index is keyed by (rsid, contig, start, ref, alt) and hash partitioned by rsid,
+ * so a dbSNP id is resolved to primary keys of its variants by reading a single tablet.
+ * The table is created if it doesn't exist, rows are upserted, so a rebuild after a
+ * reload of variants is safe.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class RsidIndexBuilder {
+
+    public static final String SUFFIX = "_rsid_idx";
+
+    public static Schema schema() {
+        return new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("rsid", Type.INT32).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("contig", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("start", Type.INT32).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("ref", Type.STRING).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("alt", Type.STRING).key(true).build()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: RsidIndexBuilder kuduMaster dataset asm [hash buckets, default 16]");
+            System.exit(1);
+        }
+        DatasetID dataset = DatasetID.fromString(args[1]);
+        Reference ref = CoreQueryUtils.normalizeReference(args[2]);
+        if (dataset == null || ref == null) {
+            System.out.println("Unknown dataset or assembly");
+            System.exit(1);
+        }
+        int buckets = (args.length > 3) ? Integer.parseInt(args[3]) : 16;
+        String variantsName = getTableName(dataset, ref, "_variants");
+        String indexName = getTableName(dataset, ref, SUFFIX);
+
+        try (KuduClient client = new KuduClient.KuduClientBuilder(args[0]).build()) {
+            if (!client.tableExists(indexName)) {
+                client.createTable(indexName, schema(), new CreateTableOptions()
+                        .addHashPartitions(Collections.singletonList("rsid"), buckets));
+                System.out.println(indexName + " has been created");
+            }
+            KuduTable variants = client.openTable(variantsName);
+            KuduTable index = client.openTable(indexName);
+
+            KuduScanner scanner = client.newScannerBuilder(variants)
+                    .setProjectedColumnNames(Arrays.asList("rsid", "contig", "start", "ref", "alt"))
+                    .addPredicate(KuduPredicate.newComparisonPredicate(variants.getSchema().getColumn("rsid"),
+                            KuduPredicate.ComparisonOp.GREATER, 0))
+                    .build();
+            KuduSession session = client.newSession();
+            session.setFlushMode(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND);
+            long n = 0;
+            try {
+                while (scanner.hasMoreRows()) {
+                    RowResultIterator results = scanner.nextRows();
+                    while (results.hasNext()) {
+                        RowResult r = results.next();
+                        Upsert upsert = index.newUpsert();
+                        PartialRow row = upsert.getRow();
+                        row.addInt("rsid", r.getInt(0));
+                        row.addString("contig", r.getString(1));
+                        row.addInt("start", r.getInt(2));
+                        row.addString("ref", r.getString(3));
+                        row.addString("alt", r.getString(4));
+                        session.apply(upsert);
+                        ++n;
+                    }
+                }
+                session.flush();
+            } finally {
+                scanner.close();
+                session.close();
+            }
+
+            RowErrorsAndOverflowStatus errors = session.getPendingErrors();
+            if (errors.getRowErrors().length > 0) {
+                System.out.println(errors.getRowErrors().length + " rows failed, first error: " + errors.getRowErrors()[0]);
+                System.exit(1);
+            }
+            System.out.println(n + " rsids of " + variantsName + " written to " + indexName);
+        }
+    }
+}
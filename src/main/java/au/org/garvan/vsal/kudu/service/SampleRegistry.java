@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.RowResult;
+import org.apache.kudu.client.RowResultIterator;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of a <code>&lt;dataset&gt;_samples</code> table.
+ * <p>
+ * Names are resolved through a hash map, ids through binary search over
+ * sorted primitive arrays.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class SampleRegistry {
+
+    private final Map<String, Integer> idsByName;
+    private final Set<String> ambiguousNames; // names with several ids
+    private final int[] ids;                  // sorted
+    private final String[] names;             // names[i] is the name of ids[i]
+    private final long loadedAt;              // ms
+
+    private SampleRegistry(Map<String, Integer> idsByName, Set<String> ambiguousNames, int[] ids, String[] names) {
+        this.idsByName = idsByName;
+        this.ambiguousNames = ambiguousNames;
+        this.ids = ids;
+        this.names = names;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    public static SampleRegistry load(KuduClient client, KuduTableHandle table) throws KuduException {
+        Map<Integer, String> byId = new HashMap<>();
+        KuduScanner.KuduScannerBuilder ksb = client.newScannerBuilder(table.getTable());
+        ksb.setProjectedColumnNames(Arrays.asList("sample_id", "sample_name"));
+        KuduScanner scanner = ksb.build();
+        try {
+            while (scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                while (results != null && results.hasNext()) {
+                    RowResult result = results.next();
+                    byId.put(result.getInt(0), result.getString(1));
+                }
+            }
+        } finally {
+            scanner.close();
+        }
+        return of(byId);
+    }
+
+    /*
+     * Snapshot of sample names by id.
+     */
+    static SampleRegistry of(Map<Integer, String> samples) {
+        SortedMap<Integer, String> byId = new TreeMap<>(samples);
+        Map<String, Integer> idsByName = new HashMap<>(byId.size() * 2);
+        Set<String> ambiguousNames = new HashSet<>();
+        int[] ids = new int[byId.size()];
+        String[] names = new String[byId.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> e : byId.entrySet()) {
+            ids[i] = e.getKey();
+            names[i] = e.getValue();
+            if (idsByName.put(e.getValue(), e.getKey()) != null)
+                ambiguousNames.add(e.getValue());
+            ++i;
+        }
+        return new SampleRegistry(idsByName, ambiguousNames, ids, names);
+    }
+
+    /**
+     * Resolves sample names to ids.
+     *
+     * @param sampleNames names of samples
+     * @return ids in iteration order of names
+     * @throws RuntimeException if a sample doesn't exist or has several ids
+     */
+    public List<Integer> resolve(Collection<String> sampleNames) {
+        List<Integer> sid = new ArrayList<>(sampleNames.size());
+        for (String name : sampleNames) {
+            Integer id = idsByName.get(name);
+            if (id == null)
+                throw new RuntimeException("Inconsistency - sample doesn't exist: " + name);
+            if (ambiguousNames.contains(name))
+                throw new RuntimeException("Inconsistency: some samples have several Ids");
+            sid.add(id);
+        }
+        return sid;
+    }
+
+    public Integer getId(String name) {
+        return idsByName.get(name);
+    }
+
+    public String getName(int id) {
+        int i = Arrays.binarySearch(ids, id);
+        return (i < 0) ? null : names[i];
+    }
+
+    public List<Integer> getIds() {
+        List<Integer> res = new ArrayList<>(ids.length);
+        for (int id : ids) res.add(id);
+        return res;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+}
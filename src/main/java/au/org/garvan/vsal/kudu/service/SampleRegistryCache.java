@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import org.apache.kudu.client.KuduException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sample registries keyed by the name of a <code>&lt;dataset&gt;_samples</code> table.
+ * <p>
+ * A registry is loaded on first use and replaced as a whole on refresh, so
+ * readers never see a partially loaded registry.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class SampleRegistryCache {
+
+    private final KuduClientManager kudu;
+    private final ConcurrentMap<String, SampleRegistry> registries = new ConcurrentHashMap<>();
+
+    public SampleRegistryCache(KuduClientManager kudu) {
+        this.kudu = kudu;
+    }
+
+    public SampleRegistry get(String tableName) throws KuduException {
+        SampleRegistry registry = registries.get(tableName);
+        return (registry != null) ? registry : refresh(tableName);
+    }
+
+    public SampleRegistry refresh(String tableName) throws KuduException {
+        SampleRegistry registry = SampleRegistry.load(kudu.getClient(), kudu.getTable(tableName));
+        registries.put(tableName, registry);
+        return registry;
+    }
+
+    /*
+     * Reloads all registries in use. A registry that fails to reload is kept.
+     */
+    public void refreshAll() {
+        for (String tableName : registries.keySet()) {
+            try {
+                refresh(tableName);
+            } catch (Exception e) {
+                System.out.println("Can't refresh sample registry " + tableName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void clear() {
+        registries.clear();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.core.entity.CoreCursor;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import org.apache.kudu.client.KuduException;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of ordered per-tablet scans of a region.
+ * <p>
+ * A fault tolerant scan returns rows in primary key order within a tablet only, tablets of
+ * hash partitioned tables interleave. Rows of all tablets are merged by (contig, start, ref, alt),
+ * so leading rows of a region are the same whatever the partitioning, and pages resumed by
+ * a cursor neither miss nor repeat variants.
+ */
+class TabletMerge {
+
+    /**
+     * Ordered source of rows, e.g. a fault tolerant scanner of a single tablet.
+     */
+    interface Tablet {
+        /**
+         * @return next rows in key order, null once the tablet is exhausted
+         */
+        VariantBatch next() throws KuduException;
+    }
+
+    private static class Head {
+        final Tablet tablet;
+        VariantBatch rows;
+        int i;
+
+        Head(Tablet tablet) {
+            this.tablet = tablet;
+        }
+    }
+
+    private final List<? extends Tablet> tablets;
+    private final CoreCursor after;
+    private PriorityQueue<Head> heads;
+
+    /**
+     * @param tablets ordered sources
+     * @param after   rows up to the cursor's key are skipped, null for none
+     */
+    TabletMerge(List<? extends Tablet> tablets, CoreCursor after) {
+        this.tablets = tablets;
+        this.after = after;
+    }
+
+    /**
+     * @param max # of rows to return
+     * @return up to max next rows in key order, an empty batch once all tablets are exhausted
+     */
+    VariantBatch next(int max) throws KuduException {
+        if (heads == null) {
+            heads = new PriorityQueue<>(Math.max(1, tablets.size()), (x, y) -> compare(x.rows, x.i, y.rows, y.i));
+            for (Tablet t : tablets) {
+                Head h = new Head(t);
+                h.i = -1;
+                if (advance(h)) heads.add(h);
+            }
+        }
+        VariantBatch out = new VariantBatch();
+        while (out.size() < max && !heads.isEmpty()) {
+            Head h = heads.poll();
+            out.add(h.rows, h.i);
+            if (advance(h)) heads.add(h);
+        }
+        return out;
+    }
+
+    /*
+     * Moves a head to the next row after the cursor, false if its tablet is exhausted.
+     */
+    private boolean advance(Head h) throws KuduException {
+        do {
+            ++h.i;
+            while (h.rows == null || h.i >= h.rows.size()) {
+                h.rows = h.tablet.next();
+                h.i = 0;
+                if (h.rows == null) return false;
+            }
+        } while (after != null && !after.isBefore(h.rows.getStart(h.i), h.rows.getRef(h.i), h.rows.getAlt(h.i)));
+        return true;
+    }
+
+    /*
+     * Same order as VariantBatch.compare(int, int), for rows of two batches.
+     */
+    private static int compare(VariantBatch x, int i, VariantBatch y, int j) {
+        int cmp = x.getContig(i).compareTo(y.getContig(j));
+        if (cmp == 0) cmp = Integer.compare(x.getStart(i), y.getStart(j));
+        if (cmp == 0) cmp = x.getRef(i).compareTo(y.getRef(j));
+        if (cmp == 0) cmp = x.getAlt(i).compareTo(y.getAlt(j));
+        return cmp;
+    }
+}
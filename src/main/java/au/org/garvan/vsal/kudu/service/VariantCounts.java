@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.beacon.entity.Chromosome;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.util.StringPool;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing aggregation table of per-variant sample and hom counts of a virtual cohort.
+ * <p>
+ * A variant is hashed through a 64-bit packed key: contig code (5 bits), start (32 bits) and
+ * a hash of ref and alt (27 bits). Keys, variants and counters live in parallel arrays in
+ * insertion order, the linear probing table holds indexes into them. Variants with equal keys
+ * are compared with <code>equals</code>, so key collisions only cost a probe.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+class VariantCounts {
+
+    private static final int OTHER_CONTIG = 31;
+    private static final long ALLELES_MASK = (1L << 27) - 1;
+
+    private int size;
+    private long[] keys;
+    private CoreVariant[] variants;
+    private int[] sc;    // alt allele sample count
+    private int[] homc;  // alt allele hom count
+    private int[] table; // index + 1 into the arrays above, 0 if empty
+    private int mask;
+
+    VariantCounts(int expected) {
+        int capacity = Math.max(16, expected);
+        keys = new long[capacity];
+        variants = new CoreVariant[capacity];
+        sc = new int[capacity];
+        homc = new int[capacity];
+        int slots = Integer.highestOneBit(Math.max(32, capacity * 2 - 1)) << 1; // load <= 0.5
+        table = new int[slots];
+        mask = slots - 1;
+    }
+
+    static long packedKey(CoreVariant cv) {
+        Chromosome c = StringPool.chromosome(cv.getC());
+        long contig = (c == null) ? OTHER_CONTIG : c.ordinal();
+        int alleles = 31 * cv.getR().hashCode() + cv.getA().hashCode();
+        if (c == null) alleles = 31 * alleles + cv.getC().hashCode();
+        return (contig << 59) | ((cv.getS() & 0xFFFFFFFFL) << 27) | (alleles & ALLELES_MASK);
+    }
+
+    private static int slot(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Counts a sample carrying a variant.
+     *
+     * @param hom true if the sample is hom alt
+     */
+    void add(CoreVariant cv, boolean hom) {
+        long key = packedKey(cv);
+        int i = slot(key) & mask;
+        while (table[i] != 0) {
+            int e = table[i] - 1;
+            if (keys[e] == key && variants[e].equals(cv)) {
+                sc[e] += 1;
+                if (hom) homc[e] += 1;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size == keys.length) growEntries();
+        keys[size] = key;
+        variants[size] = cv;
+        sc[size] = 1;
+        homc[size] = (hom) ? 1 : 0;
+        table[i] = ++size;
+        if (size * 2 > table.length) rehash();
+    }
+
+    private void growEntries() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        variants = Arrays.copyOf(variants, capacity);
+        sc = Arrays.copyOf(sc, capacity);
+        homc = Arrays.copyOf(homc, capacity);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int e = 0; e < size; ++e) {
+            int i = slot(keys[e]) & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = e + 1;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    CoreVariant getVariant(int i) {
+        return variants[i];
+    }
+
+    int getSampleCount(int i) {
+        return sc[i];
+    }
+
+    int getHomCount(int i) {
+        return homc[i];
+    }
+}
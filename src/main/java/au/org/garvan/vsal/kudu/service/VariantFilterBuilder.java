@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.util.CoreQueryUtils;
+import au.org.garvan.vsal.core.util.VariantBloomFilter;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.RowResult;
+import org.apache.kudu.client.RowResultIterator;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static au.org.garvan.vsal.kudu.service.KuduCalls.getTableName;
+
+/**
+ * Offline builder of a {@link VariantBloomFilter} from a <code>&lt;dataset&gt;_variants</code> table.
+ * <p>
+ * Usage: VariantFilterBuilder kuduMaster dataset asm outputFile [fpp]
+ * <p>
+ * The table is scanned twice: to count rows and to fill the filter.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantFilterBuilder {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: VariantFilterBuilder kuduMaster dataset asm outputFile [fpp, default 0.01]");
+            System.exit(1);
+        }
+        DatasetID dataset = DatasetID.fromString(args[1]);
+        Reference ref = CoreQueryUtils.normalizeReference(args[2]);
+        if (dataset == null || ref == null) {
+            System.out.println("Unknown dataset or assembly");
+            System.exit(1);
+        }
+        double fpp = (args.length > 4) ? Double.parseDouble(args[4]) : 0.01;
+        String tableName = getTableName(dataset, ref, "_variants");
+
+        try (KuduClient client = new KuduClient.KuduClientBuilder(args[0]).build()) {
+            KuduTable table = client.openTable(tableName);
+
+            long n = 0;
+            KuduScanner counter = client.newScannerBuilder(table)
+                    .setProjectedColumnNames(Collections.<String>emptyList()).build();
+            while (counter.hasMoreRows())
+                n += counter.nextRows().getNumRows();
+            counter.close();
+
+            VariantBloomFilter filter = VariantBloomFilter.create(n, fpp);
+            KuduScanner scanner = client.newScannerBuilder(table)
+                    .setProjectedColumnNames(Arrays.asList("contig", "start", "alt")).build();
+            while (scanner.hasMoreRows()) {
+                RowResultIterator results = scanner.nextRows();
+                while (results.hasNext()) {
+                    RowResult r = results.next();
+                    filter.put(r.getString(0), r.getInt(1), r.getString(2));
+                }
+            }
+            scanner.close();
+
+            filter.writeTo(Paths.get(args[3]));
+            System.out.println(n + " variants of " + tableName + " written to " + args[3]);
+        }
+    }
+}
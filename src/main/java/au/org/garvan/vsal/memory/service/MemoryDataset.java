@@ -0,0 +1,345 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.memory.service;
+
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import au.org.garvan.vsal.core.entity.VariantType;
+import au.org.garvan.vsal.core.util.StringPool;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Variants, genotypes and samples of one dataset, held in memory.
+ * <p>
+ * Variants are a {@link VariantBatch} sorted by (contig, start, ref, alt), as rows of a
+ * <code>_variants</code> table, so a region is a binary search away. Genotypes of variant i
+ * are entries <code>gtFrom[i] .. gtFrom[i + 1]</code> of a single int array, an entry is
+ * <code>sample id &lt;&lt; 1 | 1 if hom alt</code>. Sample ids are column indexes of a VCF.
+ * <p>
+ * Fixtures (plain or gzipped):
+ * <ul>
+ * <li>VCF - multi-allelic sites are split per ALT, counts are computed from GT of samples,
+ * or taken from INFO AC and AF for sites only VCF. Missing and reference calls are dropped.</li>
+ * <li>TSV - variants without genotypes, columns as in <code>_variants</code>:
+ * contig, start, ref, alt, rsid, vtype, ac, af, homc, hetc</li>
+ * </ul>
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+class MemoryDataset {
+
+    private final String source;
+    private final VariantBatch variants;
+    private final int[] gtFrom;
+    private final int[] gt;
+    private final String[] samples;
+    private final Map<String, Integer> sampleIds;
+
+    private MemoryDataset(String source, VariantBatch variants, int[] gtFrom, int[] gt, String[] samples) {
+        this.source = source;
+        this.variants = variants;
+        this.gtFrom = gtFrom;
+        this.gt = gt;
+        this.samples = samples;
+        this.sampleIds = new HashMap<>(samples.length * 2);
+        for (int id = 0; id < samples.length; ++id) sampleIds.put(samples[id], id);
+    }
+
+    /*
+     * Growable int array of a loader.
+     */
+    private static final class Ints {
+        private int[] a = new int[1024];
+        private int n;
+
+        void add(int v) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = v;
+        }
+
+        int get(int i) {
+            return a[i];
+        }
+
+        int size() {
+            return n;
+        }
+    }
+
+    static MemoryDataset load(String path) throws IOException {
+        String lower = path.toLowerCase();
+        boolean vcf = lower.endsWith(".vcf") || lower.endsWith(".vcf.gz");
+        VariantBatch batch = new VariantBatch();
+        Ints gtFrom = new Ints();
+        Ints gt = new Ints();
+        String[] samples = new String[0];
+
+        InputStream is = new FileInputStream(path);
+        if (lower.endsWith(".gz")) is = new GZIPInputStream(is, 1 << 16);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("##")) continue;
+                if (line.startsWith("#") || line.startsWith("contig\t")) {
+                    if (vcf) {
+                        String[] header = line.split("\t");
+                        samples = (header.length > 9) ? Arrays.copyOfRange(header, 9, header.length) : new String[0];
+                    }
+                    continue;
+                }
+                if (vcf) readVcf(line.split("\t"), samples.length, batch, gtFrom, gt);
+                else readTsv(line.split("\t"), batch, gtFrom, gt);
+            }
+        }
+        gtFrom.add(gt.size());
+
+        int[] perm = batch.order(); // fixtures are sorted by contig number, not by contig name
+        if (perm == null)
+            return new MemoryDataset(path, batch, Arrays.copyOf(gtFrom.a, gtFrom.n), Arrays.copyOf(gt.a, gt.n), samples);
+
+        int[] from = new int[batch.size() + 1];
+        int[] sorted = new int[gt.size()];
+        for (int i = 0, k = 0; i < perm.length; ++i) {
+            from[i] = k;
+            for (int j = gtFrom.get(perm[i]); j < gtFrom.get(perm[i] + 1); ++j) sorted[k++] = gt.get(j);
+        }
+        from[batch.size()] = sorted.length;
+        return new MemoryDataset(path, batch.select(perm), from, sorted, samples);
+    }
+
+    private static String contig(String c) {
+        return StringPool.contig((c.length() > 3 && c.regionMatches(true, 0, "chr", 0, 3)) ? c.substring(3) : c);
+    }
+
+    private static int rsid(String id) {
+        for (String rs : id.split(";")) {
+            if (rs.length() > 2 && rs.regionMatches(true, 0, "rs", 0, 2)) {
+                try {
+                    return Integer.parseInt(rs.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static byte vtype(String ref, String alt) {
+        VariantType t;
+        if (ref.length() == alt.length()) t = (ref.length() == 1) ? VariantType.SNV : VariantType.MNV;
+        else if (ref.length() == 1 && alt.startsWith(ref)) t = VariantType.INS;
+        else if (alt.length() == 1 && ref.startsWith(alt)) t = VariantType.DEL;
+        else t = VariantType.INDEL;
+        return t.toByte();
+    }
+
+    /*
+     * Allele of a GT field, -1 if missing or absent.
+     */
+    private static int allele(String gt, int from, int to) {
+        if (from >= to) return -1;
+        int a = 0;
+        for (int i = from; i < to; ++i) {
+            char ch = gt.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            a = a * 10 + (ch - '0');
+        }
+        return a;
+    }
+
+    private static float info(String info, String key, int k) {
+        for (String kv : info.split(";")) {
+            if (kv.startsWith(key) && kv.length() > key.length() && kv.charAt(key.length()) == '=') {
+                String[] values = kv.substring(key.length() + 1).split(",");
+                try {
+                    return (k < values.length) ? Float.parseFloat(values[k]) : 0f;
+                } catch (NumberFormatException e) {
+                    return 0f;
+                }
+            }
+        }
+        return 0f;
+    }
+
+    private static void readVcf(String[] f, int nSamples, VariantBatch batch, Ints gtFrom, Ints gt) {
+        String c = contig(f[0]);
+        int s = Integer.parseInt(f[1]);
+        int rs = rsid(f[2]);
+        String r = StringPool.allele(f[3].toUpperCase());
+
+        // first two alleles of each sample, diploid and haploid calls
+        int[] a1 = new int[nSamples];
+        int[] a2 = new int[nSamples];
+        boolean hasGT = f.length > 8 && (f[8].equals("GT") || f[8].startsWith("GT:")); // GT is the first key, if present
+        for (int j = 0; j < nSamples; ++j) {
+            a1[j] = a2[j] = -1;
+            if (!hasGT || 9 + j >= f.length) continue;
+            String field = f[9 + j];
+            int to = field.indexOf(':');
+            if (to < 0) to = field.length();
+            int sep = 0;
+            while (sep < to && field.charAt(sep) != '/' && field.charAt(sep) != '|') ++sep;
+            a1[j] = allele(field, 0, sep);
+            if (sep < to) {
+                int end = sep + 1;
+                while (end < to && field.charAt(end) != '/' && field.charAt(end) != '|') ++end;
+                a2[j] = allele(field, sep + 1, end);
+            }
+        }
+
+        String[] alts = f[4].split(",");
+        for (int k = 1; k <= alts.length; ++k) {
+            String a = alts[k - 1];
+            if (a.isEmpty() || a.equals(".") || a.equals("*") || a.startsWith("<") || a.indexOf('[') >= 0 || a.indexOf(']') >= 0)
+                continue; // symbolic and breakend alleles aren't variants of a _variants table
+            a = StringPool.allele(a.toUpperCase());
+            gtFrom.add(gt.size());
+            int homc = 0;
+            int hetc = 0;
+            for (int j = 0; j < nSamples; ++j) {
+                int copies = ((a1[j] == k) ? 1 : 0) + ((a2[j] == k) ? 1 : 0);
+                if (copies == 0) continue;
+                if (copies == 2) ++homc;
+                else ++hetc;
+                gt.add(j << 1 | ((copies == 2) ? 1 : 0));
+            }
+            float ac;
+            float af;
+            if (nSamples > 0) {
+                ac = 2f * homc + hetc;
+                af = ac / (2f * nSamples);
+            } else {
+                String info = (f.length > 7) ? f[7] : "";
+                ac = info(info, "AC", k - 1);
+                af = info(info, "AF", k - 1);
+            }
+            batch.add(c, s, r, a, rs, vtype(r, a), ac, af, homc, hetc);
+        }
+    }
+
+    private static void readTsv(String[] f, VariantBatch batch, Ints gtFrom, Ints gt) {
+        String r = StringPool.allele(f[2].toUpperCase());
+        String a = StringPool.allele(f[3].toUpperCase());
+        int rs = (f[4].isEmpty() || f[4].equals(".")) ? 0 : (rsid(f[4]) != 0) ? rsid(f[4]) : Integer.parseInt(f[4]);
+        VariantType t = VariantType.fromString(f[5]);
+        gtFrom.add(gt.size());
+        batch.add(contig(f[0]), Integer.parseInt(f[1]), r, a, rs, (t == null) ? vtype(r, a) : t.toByte(),
+                Float.parseFloat(f[6]), Float.parseFloat(f[7]), Integer.parseInt(f[8]), Integer.parseInt(f[9]));
+    }
+
+    /*
+     * First row with (contig, start) >= (c, s).
+     */
+    private int bound(String c, long s) {
+        int lo = 0;
+        int hi = variants.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = variants.getContig(mid).compareTo(c);
+            if (cmp == 0) cmp = Long.compare(variants.getStart(mid), s);
+            if (cmp < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * First row of a query region.
+     */
+    int from(CoreQuery q, int region) {
+        if (q.getChromosome() == null) return 0;
+        return bound(q.getChromosome()[region].toString(),
+                (q.getPositionStart() == null) ? Long.MIN_VALUE : q.getPositionStart()[region]);
+    }
+
+    /**
+     * Row after the last row of a query region.
+     */
+    int to(CoreQuery q, int region) {
+        if (q.getChromosome() == null) return variants.size();
+        return bound(q.getChromosome()[region].toString(),
+                (q.getPositionEnd() == null) ? Long.MAX_VALUE : q.getPositionEnd()[region] + 1L);
+    }
+
+    /**
+     * Predicates of a query other than contig, as applied by a <code>_variants</code> scan.
+     *
+     * @param rsIds dbSNP ids of a query, null if none
+     */
+    boolean matches(CoreQuery q, int region, Set<Integer> rsIds, int i) {
+        if (q.getPositionStart() != null && variants.getStart(i) < q.getPositionStart()[region]) return false;
+        if (q.getPositionEnd() != null && variants.getStart(i) > q.getPositionEnd()[region]) return false;
+        if (q.getType() != null && variants.getVtype(i) != q.getType().toByte()) return false;
+        if (q.getRefAllele() != null && !q.getRefAllele().isEmpty() && !q.getRefAllele().equals(variants.getRef(i))) return false;
+        if (q.getAltAllele() != null && !q.getAltAllele().isEmpty() && !q.getAltAllele().equals(variants.getAlt(i))) return false;
+        return rsIds == null || rsIds.contains(variants.getRsid(i));
+    }
+
+    VariantBatch getVariants() {
+        return variants;
+    }
+
+    int gtFrom(int i) {
+        return gtFrom[i];
+    }
+
+    int gtTo(int i) {
+        return gtFrom[i + 1];
+    }
+
+    int gtSample(int k) {
+        return gt[k] >>> 1;
+    }
+
+    boolean gtHom(int k) {
+        return (gt[k] & 1) != 0;
+    }
+
+    Integer getSampleId(String name) {
+        return sampleIds.get(name);
+    }
+
+    String getSampleName(int id) {
+        return samples[id];
+    }
+
+    int getSampleCount() {
+        return samples.length;
+    }
+
+    String getSource() {
+        return source;
+    }
+}
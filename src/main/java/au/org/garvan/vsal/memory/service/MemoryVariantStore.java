@@ -0,0 +1,341 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.memory.service;
+
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreCursor;
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import au.org.garvan.vsal.core.service.CoreService;
+import au.org.garvan.vsal.core.service.VariantStore;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process variant store for local runs, load tests and benchmarks, no Kudu cluster required.
+ * <p>
+ * Each dataset is loaded at startup from a fixture named by <i>memory.fixture.&lt;dataset&gt;</i>
+ * (hg19) or <i>memory.fixture.&lt;dataset&gt;.&lt;asm&gt;</i>, see {@link MemoryDataset}. Queries have
+ * the semantics of Kudu queries: regions in query order, variants in genomic order inside a region,
+ * same skip, limit and continuation tokens. Cohorts live in memory, their counts are computed from
+ * genotypes on each query, so they are ready as soon as they are registered.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+@Vetoed
+public class MemoryVariantStore implements VariantStore {
+
+    private static final String FIXTURE = "memory.fixture.";
+    private static final int STREAM_BATCH = 1024;
+
+    private final Map<String, MemoryDataset> datasets;
+    private final Map<String, Cohort> cohorts = new ConcurrentHashMap<>();
+
+    private MemoryVariantStore(Map<String, MemoryDataset> datasets) {
+        this.datasets = datasets;
+    }
+
+    /**
+     * Loads fixtures of all datasets found in properties.
+     */
+    public static MemoryVariantStore load(Properties p) {
+        Map<String, MemoryDataset> datasets = new HashMap<>();
+        for (String name : p.stringPropertyNames()) {
+            if (!name.startsWith(FIXTURE)) continue;
+            String[] id = name.substring(FIXTURE.length()).split("\\.");
+            DatasetID dataset = DatasetID.fromString(id[0]);
+            Reference ref = (id.length > 1) ? Reference.fromString(id[1]) : Reference.HG19;
+            if (dataset == null || ref == null) {
+                System.out.println("Unknown dataset or assembly in " + name);
+                continue;
+            }
+            String path = p.getProperty(name);
+            try {
+                long start = System.nanoTime();
+                MemoryDataset ds = MemoryDataset.load(path);
+                datasets.put(key(dataset, ref), ds);
+                System.out.println(ds.getVariants().size() + " variants and " + ds.getSampleCount() + " samples of "
+                        + key(dataset, ref) + " loaded from " + path + " in " + (System.nanoTime() - start) / CoreService.NANO_TO_MILLI + " ms");
+            } catch (Exception e) {
+                System.out.println("Can't load " + path + ": " + e.getMessage());
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+        }
+        return new MemoryVariantStore(datasets);
+    }
+
+    private static String key(DatasetID dataset, Reference ref) {
+        return dataset + "_" + ((ref == null) ? Reference.HG19 : ref);
+    }
+
+    private MemoryDataset dataset(DatasetID dataset, Reference ref) {
+        MemoryDataset ds = datasets.get(key(dataset, ref));
+        if (ds == null) throw new RuntimeException("No fixture for " + key(dataset, ref));
+        return ds;
+    }
+
+    private static Set<Integer> rsIds(CoreQuery query) {
+        return (query.getRsIds() == null || query.getRsIds().isEmpty()) ? null : new HashSet<>(query.getRsIds());
+    }
+
+    /*
+     * Receives rows of a query, see scan().
+     */
+    private interface RowSink {
+        void accept(int region, int row) throws IOException;
+    }
+
+    /*
+     * Rows of query regions in order: rows up to the cursor and the first skip rows are dropped,
+     * at most limit rows are handed to a sink. Returns # of rows handed.
+     */
+    private static int scan(MemoryDataset ds, CoreQuery query, RowSink sink) throws IOException {
+        VariantBatch v = ds.getVariants();
+        Set<Integer> rsIds = rsIds(query);
+        boolean unlim = query.getLimit() == null;
+        int lim = (unlim) ? 0 : query.getLimit();
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        CoreCursor cursor = CoreCursor.fromToken(query.getCursor());
+        int first = (cursor == null) ? 0 : cursor.getRegion();
+        int skipped = 0;
+        int total = 0;
+
+        for (int region = first; region < query.getRegions() && (unlim || total < lim); ++region) {
+            CoreCursor after = (region == first) ? cursor : null;
+            int to = ds.to(query, region);
+            for (int i = ds.from(query, region); i < to && (unlim || total < lim); ++i) {
+                if (!ds.matches(query, region, rsIds, i)) continue;
+                if (after != null && !after.isBefore(v.getStart(i), v.getRef(i), v.getAlt(i))) continue;
+                if (skipped < skip) {
+                    ++skipped;
+                    continue;
+                }
+                sink.accept(region, i);
+                ++total;
+            }
+        }
+        return total;
+    }
+
+    private static String next(CoreQuery query, int total, VariantBatch v, int region, int row) {
+        boolean paged = query.getLimit() != null && query.getLimit() > 0 && total == query.getLimit();
+        return (paged && query.getChromosome() != null) ?
+                new CoreCursor(region, v.getContig(row), v.getStart(row), v.getRef(row), v.getAlt(row)).toToken() : null;
+    }
+
+    @Override
+    public boolean hasVariants(DatasetID dataset, Reference ref) {
+        return datasets.containsKey(key(dataset, ref));
+    }
+
+    @Override
+    public VariantPage variants(CoreQuery query) {
+        long start = System.nanoTime();
+        MemoryDataset ds = dataset(query.getDatasetId(), query.getReference());
+        final VariantBatch v = ds.getVariants();
+        final List<CoreVariant> coreVariants = new ArrayList<>();
+        final int[] last = new int[2]; // region, row
+        try {
+            scan(ds, query, (region, row) -> {
+                coreVariants.add(v.toCoreVariant(row));
+                last[0] = region;
+                last[1] = row;
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new VariantPage(elapsedDbMs, coreVariants, next(query, coreVariants.size(), v, last[0], last[1]));
+    }
+
+    @Override
+    public VariantPage streamVariants(CoreQuery query, final VariantSink sink) throws IOException {
+        long start = System.nanoTime();
+        MemoryDataset ds = dataset(query.getDatasetId(), query.getReference());
+        final VariantBatch v = ds.getVariants();
+        final VariantBatch[] batch = {new VariantBatch(STREAM_BATCH)};
+        final long[] sinkNs = new long[1];
+        final int[] last = new int[2]; // region, row
+        int total = scan(ds, query, (region, row) -> {
+            batch[0].add(v, row);
+            last[0] = region;
+            last[1] = row;
+            if (batch[0].size() == STREAM_BATCH) {
+                long t0 = System.nanoTime();
+                sink.accept(batch[0]);
+                sinkNs[0] += System.nanoTime() - t0;
+                batch[0] = new VariantBatch(STREAM_BATCH);
+            }
+        });
+        if (!batch[0].isEmpty()) {
+            long t0 = System.nanoTime();
+            sink.accept(batch[0]);
+            sinkNs[0] += System.nanoTime() - t0;
+        }
+        long dbNs = System.nanoTime() - start - sinkNs[0];
+        return new VariantPage(dbNs / CoreService.NANO_TO_MILLI, Collections.<CoreVariant>emptyList(),
+                next(query, total, v, last[0], last[1]), total);
+    }
+
+    /*
+     * Variants of query regions present in cohort members, with virtual cohort stats, in genomic
+     * order inside a region, skip and limit applied. hom and het select genotypes counted, for
+     * intersection (conj) only variants present in all members are taken.
+     */
+    private static List<CoreVariant> counts(MemoryDataset ds, CoreQuery query, boolean[] members, int size,
+                                            boolean hom, boolean het) {
+        VariantBatch v = ds.getVariants();
+        Set<Integer> rsIds = rsIds(query);
+        int skip = (query.getSkip() == null) ? 0 : query.getSkip();
+        long want = (query.getLimit() == null) ? Long.MAX_VALUE : (long) skip + query.getLimit();
+        List<CoreVariant> coreVariants = new ArrayList<>();
+        long confirmed = 0;
+
+        for (int region = 0; region < query.getRegions() && confirmed < want && (hom || het); ++region) {
+            int to = ds.to(query, region);
+            for (int i = ds.from(query, region); i < to && confirmed < want; ++i) {
+                if (!ds.matches(query, region, rsIds, i)) continue;
+                int sc = 0;
+                int homc = 0;
+                for (int k = ds.gtFrom(i); k < ds.gtTo(i); ++k) {
+                    if (!members[ds.gtSample(k)]) continue;
+                    boolean h = ds.gtHom(k);
+                    if ((h) ? !hom : !het) continue;
+                    ++sc;
+                    if (h) ++homc;
+                }
+                if (sc == 0 || (query.getConj() && sc != size)) continue;
+                if (confirmed++ < skip) continue;
+                CoreVariant cv = v.toCoreVariant(i);
+                cv.setVhomc(homc);
+                cv.setVhetc(sc - homc);
+                cv.setVac(2f * homc + sc - homc);
+                cv.setVaf(cv.getVac() / (float) (2 * size));
+                coreVariants.add(cv);
+            }
+        }
+        return coreVariants;
+    }
+
+    private static boolean[] members(MemoryDataset ds, Collection<String> samples) {
+        boolean[] members = new boolean[ds.getSampleCount()];
+        for (String name : samples) {
+            Integer id = ds.getSampleId(name);
+            if (id == null)
+                throw new RuntimeException("Inconsistency - sample doesn't exist: " + name);
+            members[id] = true;
+        }
+        return members;
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> variantsInVirtualCohort(CoreQuery query, Set<String> samples) {
+        long start = System.nanoTime();
+        MemoryDataset ds = dataset(query.getDatasetId(), query.getReference());
+        List<CoreVariant> coreVariants = counts(ds, query, members(ds, samples), samples.size(),
+                query.getSelectHom(), query.getSelectHet());
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, coreVariants);
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<String>> selectSamplesByGT(CoreQuery query) {
+        long start = System.nanoTime();
+        MemoryDataset ds = dataset(query.getDatasetId(), query.getReference());
+        Set<Integer> rsIds = rsIds(query);
+        boolean hom = query.getSelectHom();
+        boolean het = query.getSelectHet();
+        BitSet bySamples = new BitSet(ds.getSampleCount());
+
+        for (int region = 0; region < query.getRegions() && (hom || het); ++region) {
+            int to = ds.to(query, region);
+            for (int i = ds.from(query, region); i < to; ++i) {
+                if (!ds.matches(query, region, rsIds, i)) continue;
+                for (int k = ds.gtFrom(i); k < ds.gtTo(i); ++k)
+                    if ((ds.gtHom(k)) ? hom : het) bySamples.set(ds.gtSample(k));
+            }
+        }
+
+        List<String> selectedSamplesNames = new ArrayList<>(bySamples.cardinality());
+        for (int sid = bySamples.nextSetBit(0); sid >= 0; sid = bySamples.nextSetBit(sid + 1))
+            selectedSamplesNames.add(ds.getSampleName(sid));
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, selectedSamplesNames);
+    }
+
+    @Override
+    public int refreshSamples(DatasetID dataset, Reference ref) {
+        return dataset(dataset, ref).getSampleCount(); // fixtures don't change
+    }
+
+    private static String cohortId(DatasetID dataset, Reference ref, String name) {
+        return key(dataset, ref) + "_cohort_" + name.toLowerCase();
+    }
+
+    @Override
+    public Cohort getCohort(DatasetID dataset, Reference ref, String name) {
+        return cohorts.get(cohortId(dataset, ref, name));
+    }
+
+    @Override
+    public Cohort registerCohort(DatasetID dataset, Reference ref, String name, List<String> samples) {
+        members(dataset(dataset, ref), samples); // fails on unknown samples
+        String id = cohortId(dataset, ref, name);
+        Cohort c = new Cohort(id, dataset, ref, name, new ArrayList<>(new LinkedHashSet<>(samples)), Cohort.STATUS_READY,
+                id, System.currentTimeMillis());
+        cohorts.put(id, c);
+        return c;
+    }
+
+    @Override
+    public Cohort rebuildCohort(DatasetID dataset, Reference ref, String name) {
+        return getCohort(dataset, ref, name); // counts are computed on each query
+    }
+
+    @Override
+    public boolean dropCohort(DatasetID dataset, Reference ref, String name) {
+        return cohorts.remove(cohortId(dataset, ref, name)) != null;
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<Long,List<CoreVariant>> cohortVariants(CoreQuery query, Cohort cohort) {
+        long start = System.nanoTime();
+        MemoryDataset ds = dataset(cohort.getDataset(), cohort.getRef());
+        List<CoreVariant> coreVariants = counts(ds, query, members(ds, cohort.getSamples()), cohort.getSize(),
+                query.getSelectHom(), query.getSelectHet());
+        Long elapsedDbMs = (System.nanoTime() - start) / CoreService.NANO_TO_MILLI;
+        return new AbstractMap.SimpleImmutableEntry<>(elapsedDbMs, coreVariants);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Continuation token test.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CoreCursorTest {
+
+    @Test
+    public void tokenRoundTrip() {
+        CoreCursor c = CoreCursor.fromToken(new CoreCursor(2, "X", 12345, "AT", "A").toToken());
+        assertEquals(2, c.getRegion());
+        assertEquals("X", c.getC());
+        assertEquals(12345, c.getS());
+        assertEquals("AT", c.getR());
+        assertEquals("A", c.getA());
+    }
+
+    @Test
+    public void malformedTokens() {
+        assertNull(CoreCursor.fromToken(null));
+        assertNull(CoreCursor.fromToken(""));
+        assertNull(CoreCursor.fromToken("not a token!"));
+        assertNull(CoreCursor.fromToken("MQl4"));
+    }
+
+    @Test
+    public void isBeforeFollowsKeyOrder() {
+        CoreCursor c = new CoreCursor(0, "1", 100, "A", "C");
+        assertFalse(c.isBefore(100, "A", "C"));
+        assertFalse(c.isBefore(99, "T", "T"));
+        assertFalse(c.isBefore(100, "A", "AC"));
+        assertTrue(c.isBefore(100, "A", "G"));
+        assertTrue(c.isBefore(100, "C", "A"));
+        assertTrue(c.isBefore(101, "A", "A"));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.entity;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Columnar batch of variants.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantBatchTest {
+
+    private static final byte SNV = VariantType.SNV.toByte();
+
+    private static VariantBatch unsorted() {
+        VariantBatch b = new VariantBatch(2);
+        b.add("2", 50, "A", "T", 0, SNV, 1f, 0.01f, 0, 1);
+        b.add("1", 200, "C", "G", 7, SNV, 2f, 0.02f, 1, 0);
+        b.add("1", 100, "A", "T", 0, SNV, 3f, 0.03f, 0, 3);
+        b.add("1", 100, "A", "C", 11, SNV, 4f, 0.04f, 2, 0);
+        b.add("X", 10, "G", "<A&B>", 0, (byte) 0, 5f, 0.5f, 2, 1);
+        return b;
+    }
+
+    @Test
+    public void sortsInCoreVariantOrder() {
+        VariantBatch b = unsorted();
+        b.sort();
+        assertEquals(5, b.size());
+        for (int i = 1; i < b.size(); ++i) {
+            assertTrue(b.compare(i - 1, i) < 0);
+            assertTrue(b.toCoreVariant(i - 1).compareTo(b.toCoreVariant(i)) < 0);
+        }
+        assertEquals("C", b.getAlt(0));
+        assertEquals(11, b.getRsid(0));
+        assertEquals(4f, b.getAc(0), 0);
+        assertNull(b.order()); // sorted batches are left as they are
+    }
+
+    @Test
+    public void indexOfSortedBatch() {
+        VariantBatch b = unsorted();
+        b.sort();
+        assertEquals(1, b.indexOf("1", 100, "A", "T"));
+        assertEquals(3, b.indexOf("2", 50, "A", "T"));
+        assertEquals(-3, b.indexOf("1", 150, "A", "T"));
+        assertEquals(-1, b.indexOf("1", 1, "A", "T"));
+    }
+
+    @Test
+    public void rangeAndSelectKeepRowsAndHwe() {
+        VariantBatch b = unsorted();
+        b.setHwe(2, 0.5f);
+        VariantBatch r = b.range(1, 3);
+        assertEquals(2, r.size());
+        assertEquals(200, r.getStart(0));
+        assertEquals(Float.valueOf(0.5f), r.toCoreVariant(1).getHwe());
+        assertNull(r.toCoreVariant(0).getHwe());
+
+        VariantBatch s = b.select(new int[]{4, 0});
+        assertEquals("X", s.getContig(0));
+        assertEquals("2", s.getContig(1));
+
+        VariantBatch all = new VariantBatch();
+        all.addAll(b);
+        all.add(b, 2);
+        assertEquals(6, all.size());
+        assertEquals(Float.valueOf(0.5f), all.toCoreVariant(5).getHwe());
+    }
+
+    @Test
+    public void writeJsonAsGson() throws IOException {
+        VariantBatch b = unsorted();
+        b.setHwe(1, 0.25f);
+        Gson gson = new Gson();
+        for (int i = 0; i < b.size(); ++i) {
+            StringBuilder sb = new StringBuilder();
+            b.writeJson(i, sb);
+            assertEquals(gson.toJson(b.toCoreVariant(i)), sb.toString());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.service;
+
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import au.org.garvan.vsal.core.util.CoreQueryUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Query result cache keys and invalidation.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class QueryResultCacheTest {
+
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new QueryResultCache();
+        cache.init();
+    }
+
+    private static CoreQuery query(DatasetID dataset, String... dbSNP) {
+        CoreQuery q = new CoreQuery();
+        q.setDatasetId(dataset);
+        q.setDbSNP(Arrays.asList(dbSNP));
+        q.setRsIds(CoreQueryUtils.parseRsIds(Arrays.asList(dbSNP)));
+        q.setLimit(10);
+        return q;
+    }
+
+    private static VariantPage page() {
+        return new VariantPage(1L, Collections.<CoreVariant>emptyList(), null);
+    }
+
+    @Test
+    public void keyUsesParsedRsIds() {
+        VariantPage page = page();
+        cache.put(query(DatasetID.DEMO, "rs123,rs7"), page);
+        assertSame(page, cache.get(query(DatasetID.DEMO, "RS7", "123")));
+        assertSame(page, cache.get(query(DatasetID.DEMO, "123", "rs7", "7")));
+        assertNull(cache.get(query(DatasetID.DEMO, "rs123")));
+        assertNull(cache.get(query(DatasetID.MGRB, "rs123,rs7")));
+    }
+
+    @Test
+    public void invalidatesOneDataset() {
+        cache.put(query(DatasetID.DEMO, "rs1"), page());
+        cache.put(query(DatasetID.MGRB, "rs1"), page());
+        cache.invalidate(DatasetID.DEMO);
+        assertNull(cache.get(query(DatasetID.DEMO, "rs1")));
+        assertTrue(cache.get(query(DatasetID.MGRB, "rs1")) != null);
+        cache.invalidateAll();
+        assertNull(cache.get(query(DatasetID.MGRB, "rs1")));
+    }
+
+    @Test
+    public void queriesNeedingJwtAreNotCacheable() {
+        CoreQuery q = query(DatasetID.DEMO, "rs1");
+        assertTrue(QueryResultCache.isCacheable(q));
+        q.setSamples(Arrays.asList("S1"));
+        assertFalse(QueryResultCache.isCacheable(q));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * dbSNP ids parsing.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CoreQueryUtilsTest {
+
+    @Test
+    public void parsesPrefixedPlainAndCsvIds() {
+        assertEquals(Arrays.asList(123, 456, 789, 10),
+                CoreQueryUtils.parseRsIds(Arrays.asList("rs123", " RS456 , 789", "rS10")));
+    }
+
+    @Test
+    public void noIds() {
+        assertTrue(CoreQueryUtils.parseRsIds(null).isEmpty());
+        assertTrue(CoreQueryUtils.parseRsIds(Collections.<String>emptyList()).isEmpty());
+        assertTrue(CoreQueryUtils.parseRsIds(Arrays.asList("", " , ")).isEmpty());
+    }
+
+    @Test
+    public void malformedIds() {
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("rs")));
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("rs12a")));
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("rs1,ss2")));
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("rs0")));
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("-5")));
+        assertNull(CoreQueryUtils.parseRsIds(Arrays.asList("rs99999999999")));
+    }
+}
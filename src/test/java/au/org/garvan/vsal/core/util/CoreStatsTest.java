@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Statistics tests against reference p-values.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class CoreStatsTest {
+
+    @Test
+    public void pValueDf1MatchesCriticalValues() {
+        assertEquals(0.05, CoreStats.pValueDf1(3.841459), 1e-5);
+        assertEquals(0.01, CoreStats.pValueDf1(6.634897), 1e-5);
+        assertEquals(0.001, CoreStats.pValueDf1(10.827566), 1e-6);
+        assertEquals(1.0, CoreStats.pValueDf1(0), 0);
+        assertTrue(CoreStats.pValueDf1(100) < 1e-20);
+    }
+
+    @Test
+    public void hweOfScarletTigerMoth() {
+        // Ford (1971): 1469 RR, 138 RA, 5 AA, chi2 = 0.831
+        float[] p = new float[2];
+        CoreStats.hwe(new int[]{5, 0}, new int[]{138, 0}, new int[]{1612, 10}, p, 2);
+        assertEquals(0.3620, p[0], 1e-4);
+        assertEquals(1f, p[1], 0); // monomorphic
+    }
+
+    @Test
+    public void hweOfInconsistentCountsIsNaN() {
+        float[] p = new float[1];
+        CoreStats.hwe(new int[]{8}, new int[]{5}, new int[]{10}, p, 1);
+        assertTrue(Float.isNaN(p[0]));
+    }
+
+    @Test
+    public void chi2AllelicTest() {
+        float[] p = new float[2];
+        float[] or = new float[2];
+        CoreStats.chi2(new int[]{10, 0}, new int[]{20, 10}, new int[]{30, 5}, new int[]{40, 5}, p, or, 2);
+        assertEquals(0.3730, p[0], 1e-4);
+        assertEquals(10.0 * 40 / (20 * 30), or[0], 1e-6);
+        // Haldane's correction
+        assertEquals(0.5 * 5.5 / (10.5 * 5.5), or[1], 1e-6);
+    }
+}
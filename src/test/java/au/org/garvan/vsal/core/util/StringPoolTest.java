@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import au.org.garvan.vsal.beacon.entity.Chromosome;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Canonical contigs and pooled alleles.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class StringPoolTest {
+
+    @Test
+    public void chromosomes() {
+        for (Chromosome c : Chromosome.values())
+            assertSame(c, StringPool.chromosome(new String(c.toString())));
+        assertNull(StringPool.chromosome(null));
+        assertNull(StringPool.chromosome("0"));
+        assertNull(StringPool.chromosome("23"));
+        assertNull(StringPool.chromosome("M"));
+        assertNull(StringPool.chromosome("chr1"));
+        assertNull(StringPool.chromosome("GL000192.1"));
+    }
+
+    @Test
+    public void canonicalContigs() {
+        assertSame(Chromosome.CHR17.toString(), StringPool.contig(new String("17")));
+        assertSame(Chromosome.CHRMT.toString(), StringPool.contig(new String("MT")));
+        String other = "GL000192.1";
+        assertSame(other, StringPool.contig(other));
+    }
+
+    @Test
+    public void pooledAlleles() {
+        String first = StringPool.allele(new String("ACGTTT"));
+        assertSame(first, StringPool.allele(new String("ACGTTT")));
+        assertEquals("ACGTTT", first);
+        String longAllele = new String("ACGTACGTACGTACGTA");
+        assertSame(longAllele, StringPool.allele(longAllele));
+        assertNull(StringPool.allele(null));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.core.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Variant filter file round trip.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void writeAndLoad() throws IOException {
+        VariantBloomFilter filter = VariantBloomFilter.create(1000, 0.001);
+        for (int s = 1; s <= 1000; ++s)
+            filter.put("1", s * 10, "A");
+        Path file = tmp.newFile("demo.bloom").toPath();
+        filter.writeTo(file);
+
+        VariantBloomFilter loaded = VariantBloomFilter.load(file);
+        int falsePositives = 0;
+        for (int s = 1; s <= 1000; ++s) {
+            assertTrue(loaded.mightContain("1", s * 10, "A"));
+            if (loaded.mightContain("2", s * 10, "A")) ++falsePositives;
+        }
+        assertTrue(falsePositives < 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Path file = tmp.newFile("other.bloom").toPath();
+        Files.write(file, new byte[64]);
+        VariantBloomFilter.load(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        VariantBloomFilter filter = VariantBloomFilter.create(1000, 0.01);
+        Path file = tmp.newFile("truncated.bloom").toPath();
+        filter.writeTo(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        VariantBloomFilter.load(file);
+    }
+}
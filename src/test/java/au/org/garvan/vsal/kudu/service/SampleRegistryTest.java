@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Sample registry test.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class SampleRegistryTest {
+
+    private static SampleRegistry registry() {
+        Map<Integer, String> byId = new HashMap<>();
+        byId.put(30, "C");
+        byId.put(10, "A");
+        byId.put(20, "B");
+        byId.put(40, "B");
+        return SampleRegistry.of(byId);
+    }
+
+    @Test
+    public void resolvesNamesInIterationOrder() {
+        assertEquals(Arrays.asList(30, 10), registry().resolve(Arrays.asList("C", "A")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void unknownSampleFails() {
+        registry().resolve(Arrays.asList("A", "Z"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void sampleWithSeveralIdsFails() {
+        registry().resolve(Arrays.asList("B"));
+    }
+
+    @Test
+    public void namesByIdAndSortedIds() {
+        SampleRegistry r = registry();
+        assertEquals("C", r.getName(30));
+        assertNull(r.getName(25));
+        assertEquals(Integer.valueOf(10), r.getId("A"));
+        assertEquals(Arrays.asList(10, 20, 30, 40), r.getIds());
+        assertEquals(4, r.size());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.core.entity.CoreCursor;
+import au.org.garvan.vsal.core.entity.VariantBatch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Paging over a region spread across hash partitioned tablets.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class TabletMergeTest {
+
+    private static final int TABLETS = 3;
+    private static final int CHUNK = 4;
+
+    /*
+     * Tablet scan in key order, at most lim rows, in chunks of CHUNK rows.
+     */
+    private static TabletMerge.Tablet tablet(VariantBatch rows, int lim) {
+        int n = Math.min(lim, rows.size());
+        int[] pos = {0};
+        return () -> {
+            if (pos[0] >= n) return null;
+            int to = Math.min(n, pos[0] + CHUNK);
+            VariantBatch chunk = rows.range(pos[0], to);
+            pos[0] = to;
+            return chunk;
+        };
+    }
+
+    /*
+     * Variants of a region, hashed to tablets by start.
+     */
+    private static List<VariantBatch> partition() {
+        List<VariantBatch> tablets = new ArrayList<>();
+        for (int t = 0; t < TABLETS; ++t) tablets.add(new VariantBatch());
+        for (int s = 100; s < 150; ++s) {
+            tablets.get((s * 31) % TABLETS).add("1", s, "A", "C", s, (byte) 0, 1f, 0.1f, 0, 1);
+            if (s % 5 == 0)
+                tablets.get((s * 17 + 1) % TABLETS).add("1", s, "A", "G", s, (byte) 0, 1f, 0.1f, 0, 1);
+        }
+        for (VariantBatch t : tablets) t.sort();
+        return tablets;
+    }
+
+    private static List<TabletMerge.Tablet> scans(List<VariantBatch> tablets, int lim) {
+        List<TabletMerge.Tablet> scans = new ArrayList<>();
+        for (VariantBatch t : tablets) scans.add(tablet(t, lim));
+        return scans;
+    }
+
+    private static List<String> keys(VariantBatch batch) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < batch.size(); ++i)
+            keys.add(batch.getContig(i) + ":" + batch.getStart(i) + ":" + batch.getRef(i) + ":" + batch.getAlt(i));
+        return keys;
+    }
+
+    @Test
+    public void mergedRowsAreInKeyOrder() throws Exception {
+        List<VariantBatch> tablets = partition();
+        VariantBatch all = new VariantBatch();
+        for (VariantBatch t : tablets) all.addAll(t);
+        all.sort();
+
+        VariantBatch merged = new TabletMerge(scans(tablets, Integer.MAX_VALUE), null).next(Integer.MAX_VALUE);
+        assertEquals(keys(all), keys(merged));
+    }
+
+    @Test
+    public void pagesMatchUnpagedResult() throws Exception {
+        List<VariantBatch> tablets = partition();
+        VariantBatch all = new TabletMerge(scans(tablets, Integer.MAX_VALUE), null).next(Integer.MAX_VALUE);
+
+        int lim = 7;
+        // page 1: every tablet is limited to lim rows, as the scans of a fresh region are
+        VariantBatch page1 = new TabletMerge(scans(tablets, lim), null).next(lim);
+        int last = page1.size() - 1;
+        CoreCursor cursor = new CoreCursor(0, page1.getContig(last), page1.getStart(last), page1.getRef(last), page1.getAlt(last));
+        // page 2: resumed at the cursor
+        VariantBatch page2 = new TabletMerge(scans(tablets, Integer.MAX_VALUE), CoreCursor.fromToken(cursor.toToken())).next(lim);
+
+        List<String> paged = keys(page1);
+        paged.addAll(keys(page2));
+        assertEquals(keys(all).subList(0, 2 * lim), paged);
+    }
+
+    @Test
+    public void exhaustedTabletsGiveEmptyBatch() throws Exception {
+        List<TabletMerge.Tablet> scans = new ArrayList<>();
+        scans.add(() -> null);
+        TabletMerge merge = new TabletMerge(scans, null);
+        assertEquals(0, merge.next(10).size());
+        assertEquals(0, new TabletMerge(new ArrayList<TabletMerge.Tablet>(), null).next(10).size());
+    }
+}
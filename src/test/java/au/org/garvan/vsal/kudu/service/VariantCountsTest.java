@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.kudu.service;
+
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Aggregation of virtual cohort counts.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class VariantCountsTest {
+
+    private static CoreVariant variant(String c, int s, String r, String a) {
+        return new CoreVariant(c, s, null, a, r, null, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    @Test
+    public void countsSamplesAndHomsInInsertionOrder() {
+        VariantCounts counts = new VariantCounts(1);
+        CoreVariant v1 = variant("1", 100, "A", "C");
+        counts.add(v1, false);
+        counts.add(variant("1", 100, "A", "G"), true);
+        counts.add(variant("1", 100, "A", "C"), true);
+        counts.add(variant("1", 100, "A", "C"), false);
+
+        assertEquals(2, counts.size());
+        assertSame(v1, counts.getVariant(0));
+        assertEquals(3, counts.getSampleCount(0));
+        assertEquals(1, counts.getHomCount(0));
+        assertEquals("G", counts.getVariant(1).getA());
+        assertEquals(1, counts.getSampleCount(1));
+        assertEquals(1, counts.getHomCount(1));
+    }
+
+    @Test
+    public void packedKeySeparatesContigs() {
+        assertNotEquals(VariantCounts.packedKey(variant("1", 5, "A", "C")), VariantCounts.packedKey(variant("2", 5, "A", "C")));
+        assertNotEquals(VariantCounts.packedKey(variant("GL000192.1", 5, "A", "C")),
+                VariantCounts.packedKey(variant("GL000193.1", 5, "A", "C")));
+    }
+
+    @Test
+    public void matchesHashMapAcrossGrowth() {
+        Random rnd = new Random(42);
+        String[] bases = {"A", "C", "G", "T", "AT", "GC"};
+        VariantCounts counts = new VariantCounts(16);
+        Map<CoreVariant, int[]> expected = new HashMap<>();
+        for (int k = 0; k < 20000; ++k) {
+            CoreVariant cv = variant((rnd.nextBoolean()) ? "1" : "X", rnd.nextInt(2000),
+                    bases[rnd.nextInt(bases.length)], bases[rnd.nextInt(bases.length)]);
+            boolean hom = rnd.nextInt(3) == 0;
+            counts.add(cv, hom);
+            int[] e = expected.computeIfAbsent(cv, v -> new int[2]);
+            e[0] += 1;
+            if (hom) e[1] += 1;
+        }
+        assertEquals(expected.size(), counts.size());
+        for (int i = 0; i < counts.size(); ++i) {
+            int[] e = expected.get(counts.getVariant(i));
+            assertEquals(e[0], counts.getSampleCount(i));
+            assertEquals(e[1], counts.getHomCount(i));
+        }
+    }
+}
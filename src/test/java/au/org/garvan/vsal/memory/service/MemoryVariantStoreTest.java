@@ -0,0 +1,266 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2019 Dmitry Degrave
+ * Copyright (c) 2019 Garvan Institute of Medical Research
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package au.org.garvan.vsal.memory.service;
+
+import au.org.garvan.vsal.beacon.entity.Chromosome;
+import au.org.garvan.vsal.beacon.entity.Reference;
+import au.org.garvan.vsal.core.entity.Cohort;
+import au.org.garvan.vsal.core.entity.CoreQuery;
+import au.org.garvan.vsal.core.entity.CoreVariant;
+import au.org.garvan.vsal.core.entity.DatasetID;
+import au.org.garvan.vsal.core.entity.VariantPage;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Queries of the in-memory store over VCF and TSV fixtures.
+ *
+ * @author Dmitry Degrave
+ * @version 1.0
+ */
+public class MemoryVariantStoreTest {
+
+    private static MemoryVariantStore store;
+
+    @BeforeClass
+    public static void load() {
+        Properties p = new Properties();
+        p.setProperty("memory.fixture.demo", MemoryVariantStoreTest.class.getResource("/memory/demo.vcf").getPath());
+        p.setProperty("memory.fixture.mgrb.hg19", MemoryVariantStoreTest.class.getResource("/memory/sites.tsv").getPath());
+        store = MemoryVariantStore.load(p);
+    }
+
+    private static CoreQuery query(DatasetID dataset, String[] contigs, int[] starts, int[] ends) {
+        CoreQuery q = new CoreQuery();
+        q.setDatasetId(dataset);
+        q.setReference(Reference.HG19);
+        Chromosome[] chromosome = new Chromosome[contigs.length];
+        for (int i = 0; i < contigs.length; ++i)
+            chromosome[i] = Chromosome.fromString(contigs[i]);
+        q.setChromosome(chromosome);
+        q.setPositionStart(starts);
+        q.setPositionEnd(ends);
+        q.setRegions(contigs.length);
+        return q;
+    }
+
+    private static CoreQuery chr1() {
+        return query(DatasetID.DEMO, new String[]{"1"}, new int[]{1}, new int[]{1000});
+    }
+
+    private static List<String> keys(List<CoreVariant> variants) {
+        List<String> keys = new ArrayList<>(variants.size());
+        for (CoreVariant v : variants)
+            keys.add(v.getC() + ":" + v.getS() + ":" + v.getR() + ">" + v.getA());
+        return keys;
+    }
+
+    private static Set<String> samples(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void datasets() {
+        assertTrue(store.hasVariants(DatasetID.DEMO, Reference.HG19));
+        assertTrue(store.hasVariants(DatasetID.MGRB, Reference.HG19));
+        assertFalse(store.hasVariants(DatasetID.DEMO, Reference.HG38));
+        assertFalse(store.hasVariants(DatasetID.ASPREE, Reference.HG19));
+    }
+
+    @Test
+    public void region() {
+        CoreQuery q = query(DatasetID.DEMO, new String[]{"1"}, new int[]{150}, new int[]{300});
+        VariantPage page = store.variants(q);
+        assertEquals(Arrays.asList("1:200:C>T", "1:300:G>A", "1:300:G>T"), keys(page.getValue()));
+        assertNull(page.getNext());
+
+        CoreVariant v = store.variants(query(DatasetID.DEMO, new String[]{"1"}, new int[]{100}, new int[]{100})).getValue().get(0);
+        assertEquals(Integer.valueOf(1), v.getHomc());
+        assertEquals(Integer.valueOf(1), v.getHetc());
+        assertEquals(3f, v.getAc(), 0f);
+        assertEquals(0.5f, v.getAf(), 1e-6f);
+    }
+
+    @Test
+    public void regionsInQueryOrder() {
+        CoreQuery q = query(DatasetID.DEMO, new String[]{"10", "2", "1"}, new int[]{1, 1, 100}, new int[]{1000, 1000, 100});
+        assertEquals(Arrays.asList("10:50:AT>A", "2:150:T>C", "1:100:A>G"), keys(store.variants(q).getValue()));
+    }
+
+    @Test
+    public void tsv() {
+        CoreQuery q = query(DatasetID.MGRB, new String[]{"1"}, new int[]{1}, new int[]{5000});
+        List<CoreVariant> variants = store.variants(q).getValue();
+        assertEquals(Arrays.asList("1:1000:C>G", "1:2000:CA>C"), keys(variants));
+        assertEquals(12f, variants.get(0).getAc(), 0f);
+        assertEquals(Integer.valueOf(2), variants.get(0).getHomc());
+        assertEquals(Integer.valueOf(3), variants.get(1).getHetc());
+        assertNull(variants.get(1).getRs());
+    }
+
+    @Test
+    public void rsid() {
+        CoreQuery q = new CoreQuery();
+        q.setDatasetId(DatasetID.DEMO);
+        q.setRsIds(Collections.singletonList(13));
+        q.setRegions(1);
+        List<CoreVariant> variants = store.variants(q).getValue();
+        assertEquals(Arrays.asList("1:300:G>A", "1:300:G>T"), keys(variants));
+        assertEquals("rs13", variants.get(0).getRs().trim());
+
+        q = chr1();
+        q.setRsIds(Arrays.asList(11, 21));
+        assertEquals(Collections.singletonList("1:100:A>G"), keys(store.variants(q).getValue()));
+    }
+
+    @Test
+    public void paging() {
+        CoreQuery q = chr1();
+        q.setLimit(2);
+        VariantPage page = store.variants(q);
+        assertEquals(Arrays.asList("1:100:A>G", "1:200:C>T"), keys(page.getValue()));
+        assertNotNull(page.getNext());
+
+        q.setCursor(page.getNext());
+        page = store.variants(q);
+        assertEquals(Arrays.asList("1:300:G>A", "1:300:G>T"), keys(page.getValue()));
+        assertNotNull(page.getNext());
+
+        q.setCursor(page.getNext());
+        page = store.variants(q);
+        assertTrue(page.getValue().isEmpty());
+        assertNull(page.getNext());
+
+        q = chr1();
+        q.setSkip(1);
+        q.setLimit(1);
+        assertEquals(Collections.singletonList("1:200:C>T"), keys(store.variants(q).getValue()));
+    }
+
+    @Test
+    public void pagingAcrossRegions() {
+        CoreQuery q = query(DatasetID.DEMO, new String[]{"2", "1"}, new int[]{1, 1}, new int[]{1000, 1000});
+        q.setLimit(3);
+        VariantPage page = store.variants(q);
+        assertEquals(Arrays.asList("2:150:T>C", "1:100:A>G", "1:200:C>T"), keys(page.getValue()));
+
+        q.setCursor(page.getNext());
+        page = store.variants(q);
+        assertEquals(Arrays.asList("1:300:G>A", "1:300:G>T"), keys(page.getValue()));
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void virtualCohort() {
+        CoreQuery q = chr1();
+        q.setSelectHom(true);
+        q.setSelectHet(true);
+        List<CoreVariant> variants = store.variantsInVirtualCohort(q, samples("S1", "S3")).getValue();
+        assertEquals(Arrays.asList("1:100:A>G", "1:300:G>A", "1:300:G>T"), keys(variants));
+        CoreVariant v = variants.get(2);
+        assertEquals(Integer.valueOf(1), v.getVhomc());
+        assertEquals(Integer.valueOf(1), v.getVhetc());
+        assertEquals(3f, v.getVac(), 0f);
+        assertEquals(0.75f, v.getVaf(), 1e-6f);
+
+        q.setSelectHet(false);
+        assertEquals(Collections.singletonList("1:300:G>T"), keys(store.variantsInVirtualCohort(q, samples("S1", "S3")).getValue()));
+
+        q.setSelectHom(false);
+        q.setSelectHet(true);
+        variants = store.variantsInVirtualCohort(q, samples("S1", "S3")).getValue();
+        assertEquals(Arrays.asList("1:100:A>G", "1:300:G>A", "1:300:G>T"), keys(variants));
+        assertEquals(Integer.valueOf(0), variants.get(2).getVhomc());
+        assertEquals(Integer.valueOf(1), variants.get(2).getVhetc());
+
+        q.setSelectHom(true);
+        q.setConj(true);
+        assertEquals(Collections.singletonList("1:300:G>T"), keys(store.variantsInVirtualCohort(q, samples("S1", "S3")).getValue()));
+    }
+
+    @Test
+    public void virtualCohortWithoutGenotypes() {
+        CoreQuery q = chr1();
+        q.setSelectHom(false);
+        q.setSelectHet(false);
+        assertTrue(store.variantsInVirtualCohort(q, samples("S1", "S2", "S3")).getValue().isEmpty());
+        assertTrue(store.selectSamplesByGT(q).getValue().isEmpty());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void virtualCohortOfUnknownSample() {
+        store.variantsInVirtualCohort(chr1(), samples("S1", "S4"));
+    }
+
+    @Test
+    public void registeredCohort() {
+        Cohort c = store.registerCohort(DatasetID.DEMO, Reference.HG19, "pair", Arrays.asList("S1", "S2", "S1"));
+        assertEquals(Cohort.STATUS_READY, c.getStatus());
+        assertEquals(2, c.getSize());
+        assertEquals(c.getId(), store.getCohort(DatasetID.DEMO, Reference.HG19, "PAIR").getId());
+
+        CoreQuery q = query(DatasetID.DEMO, new String[]{"2", "1"}, new int[]{1, 100}, new int[]{1000, 200});
+        q.setSelectHom(true);
+        q.setSelectHet(true);
+        List<CoreVariant> variants = store.cohortVariants(q, c).getValue();
+        assertEquals(Arrays.asList("2:150:T>C", "1:100:A>G", "1:200:C>T"), keys(variants));
+        assertEquals(0.5f, variants.get(0).getVaf(), 1e-6f);
+        assertEquals(Integer.valueOf(1), variants.get(1).getVhomc());
+        assertEquals(Integer.valueOf(1), variants.get(1).getVhetc());
+
+        q.setLimit(1);
+        q.setSkip(1);
+        assertEquals(Collections.singletonList("1:100:A>G"), keys(store.cohortVariants(q, c).getValue()));
+
+        assertTrue(store.dropCohort(DatasetID.DEMO, Reference.HG19, "pair"));
+        assertNull(store.getCohort(DatasetID.DEMO, Reference.HG19, "pair"));
+    }
+
+    @Test
+    public void samplesByGT() {
+        CoreQuery q = chr1();
+        q.setSelectHom(true);
+        assertEquals(Arrays.asList("S2", "S3"), store.selectSamplesByGT(q).getValue());
+
+        q.setSelectHom(false);
+        q.setSelectHet(true);
+        assertEquals(Arrays.asList("S1", "S2"), store.selectSamplesByGT(q).getValue());
+    }
+}